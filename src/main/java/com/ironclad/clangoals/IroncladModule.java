@@ -20,8 +20,13 @@ import com.ironclad.clangoals.components.service.api.ApiService;
 import com.ironclad.clangoals.component.Component;
 import com.ironclad.clangoals.util.Environment;
 import com.ironclad.clangoals.util.IronClad;
+import com.ironclad.clangoals.util.FileStateStore;
+import com.ironclad.clangoals.util.StateStore;
+import com.ironclad.clangoals.util.gson.ConfigAdapterFactory;
 import com.ironclad.clangoals.util.gson.PatternAdapter;
+import java.io.File;
 import java.util.regex.Pattern;
+import net.runelite.client.RuneLite;
 import net.runelite.client.config.ConfigManager;
 import okhttp3.HttpUrl;
 
@@ -56,6 +61,7 @@ final class IroncladModule extends AbstractModule
 		//Why? because reasons. Could have used a @Named, but this is more fun.
 		return gson.newBuilder()
 			.registerTypeAdapter(Pattern.class, new PatternAdapter())
+			.registerTypeAdapterFactory(new ConfigAdapterFactory())
 			.create();
 	}
 
@@ -67,6 +73,14 @@ final class IroncladModule extends AbstractModule
 		return HttpUrl.parse(useEnv && devMode ? Environment.DEV_URL.get() : url);
 	}
 
+	@Provides
+	@Singleton
+	@Named("spool.dir")
+	File provideSpoolDir()
+	{
+		return new File(new File(RuneLite.RUNELITE_DIR, "ironclad"), "spool");
+	}
+
 	@Provides
 	@Singleton
 	RemoteConfig provideRemoteConfig(RemoteConfigLoader configLoader)
@@ -74,6 +88,14 @@ final class IroncladModule extends AbstractModule
 		return configLoader.getManagedConfig();
 	}
 
+	@Provides
+	@Singleton
+	StateStore provideStateStore(@Named("spool.dir") File spoolDir)
+	{
+		//Kept out of the config group, writes there fire ConfigChanged and sync with the profile.
+		return new FileStateStore(new File(spoolDir.getParentFile(), "state.properties").toPath());
+	}
+
 	@Provides
 	@Singleton
 	IroncladClanGoalsConfig provideConfig(ConfigManager configManager)
@@ -39,9 +39,12 @@ public class ComponentManager
 	public void onPluginStop()
 	{
 		this.eventBus.unregister(this);
+		PluginState state = this.pluginStateTracker.getState();
 		this.components.stream()
-			.filter(this.states::get)
-			.forEach(c -> tryShutDown(c, this.pluginStateTracker.getState()));
+			.filter(c -> c != this.pluginStateTracker && this.states.get(c))
+			.forEach(c -> tryShutDown(c, state));
+		//Owns auth and the spools the other components drain into
+		tryShutDown(this.pluginStateTracker, state);
 	}
 
 	@Subscribe
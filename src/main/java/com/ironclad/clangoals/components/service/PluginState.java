@@ -1,6 +1,7 @@
 package com.ironclad.clangoals.components.service;
 
 import com.ironclad.clangoals.components.service.api.ApiService;
+import com.ironclad.clangoals.components.service.api.CircuitState;
 import com.ironclad.clangoals.components.service.config.RemoteConfigLoader;
 import lombok.AccessLevel;
 import lombok.Builder;
@@ -32,4 +33,9 @@ public class PluginState
 	 * Is the player in a world where goals are enabled.
 	 */
 	boolean inEnabledWorld;//TODO: Make this a per goal setting.
+	/**
+	 * Circuit breaker state of {@link ApiService} uploads.
+	 */
+	@Builder.Default
+	CircuitState circuit = CircuitState.CLOSED;
 }
@@ -5,6 +5,8 @@ import com.google.inject.Singleton;
 import com.ironclad.clangoals.IroncladClanGoalsConfig;
 import com.ironclad.clangoals.component.Component;
 import com.ironclad.clangoals.components.service.api.ApiService;
+import com.ironclad.clangoals.components.service.api.CircuitStateChanged;
+import com.ironclad.clangoals.components.service.api.spool.SpoolManager;
 import com.ironclad.clangoals.components.service.config.RemoteConfigLoader;
 import com.ironclad.clangoals.components.service.config.RemoteConfigChanged;
 import com.ironclad.clangoals.util.ClanUtils;
@@ -40,13 +42,24 @@ public class ServiceComponent implements Component
 	private final EventBus eventBus;
 	private final ClientThread clientThread;
 	private final ScheduledExecutorService executor;
+	private final SpoolManager spools;
 
 	@Getter
 	private PluginState state = DEFAULT_STATE;
+	/**
+	 * Bumped on every start, a shutdown still waiting for the drains does nothing once started again.
+	 * Guarded by this.
+	 */
+	private int generation;
 
 	@Override
 	public void onStartUp(PluginState state)
 	{
+		synchronized (this)
+		{
+			this.generation++;
+			this.spools.open();
+		}
 		this.eventBus.register(this);
 		onRemoteConfigChanged(new RemoteConfigChanged(this.rConfigLoader.getManagedConfig()));
 		verifyApiKey(this.pluginConfig.apiKey(), false);
@@ -55,8 +68,25 @@ public class ServiceComponent implements Component
 	@Override
 	public void onShutDown(PluginState state)
 	{
-		this.api.checkAuth(null);
 		this.eventBus.unregister(this);
+		int generation;
+		synchronized (this)
+		{
+			generation = this.generation;
+		}
+		//Tracking components stop first, their last batches still need auth and the spools
+		this.api.drained().thenRun(() -> release(generation));
+	}
+
+	private synchronized void release(int generation)
+	{
+		if (generation != this.generation)
+		{
+			return;
+		}
+		this.api.saveLedger();
+		this.api.checkAuth(null);
+		this.spools.close();
 	}
 
 	@Override
@@ -128,6 +158,7 @@ public class ServiceComponent implements Component
 			{
 				this.api.setAccountHash(newHash);
 				this.api.updatePlayerAsync(player.getName());
+				this.api.replaySpooled();
 			}
 
 			return true;
@@ -160,6 +191,12 @@ public class ServiceComponent implements Component
 		}
 	}
 
+	@Subscribe
+	private void onCircuitStateChanged(CircuitStateChanged e)
+	{
+		setState(this.state.toBuilder().circuit(e.getState()).build(), false);
+	}
+
 	@Subscribe(priority = Float.MAX_VALUE)
 	private void onRemoteConfigChanged(RemoteConfigChanged e)
 	{
@@ -174,9 +211,12 @@ public class ServiceComponent implements Component
 		{
 			return;
 		}
-		this.executor.execute(() -> {
-			boolean result = this.api.checkAuth(key);
+		this.api.checkAuth(key).thenAcceptAsync(result -> {
 			setState(this.state.toBuilder().authenticated(result).build(), false);
-		});
+			if (result)
+			{
+				this.api.replaySpooled();
+			}
+		}, this.executor);
 	}
 }
@@ -3,23 +3,49 @@ package com.ironclad.clangoals.components.service.api;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import com.ironclad.clangoals.components.service.api.payload.BatchEncoding;
+import com.ironclad.clangoals.components.service.api.payload.BatchHeader;
+import com.ironclad.clangoals.components.service.api.payload.BatchSplitter;
+import com.ironclad.clangoals.components.service.api.payload.Gzip;
+import com.ironclad.clangoals.components.service.api.payload.NameDictionary;
+import com.ironclad.clangoals.components.service.api.payload.NameEncoding;
+import com.ironclad.clangoals.components.service.api.payload.RecordSource;
+import com.ironclad.clangoals.components.service.api.payload.RecordWriter;
+import com.ironclad.clangoals.components.service.api.spool.BatchSpool;
+import com.ironclad.clangoals.components.service.api.spool.SpoolEntry;
+import com.ironclad.clangoals.components.service.api.spool.SpoolManager;
+import com.ironclad.clangoals.components.service.config.dto.ApiConfig;
 import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
 import com.ironclad.clangoals.util.Environment;
 import com.ironclad.clangoals.util.IronClad;
+import com.ironclad.clangoals.util.StateStore;
 import com.ironclad.clangoals.util.predicate.ValidApiKey;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.eventbus.EventBus;
 import okhttp3.*;
+import okio.Buffer;
 
 import java.io.IOException;
 import java.util.List;
@@ -30,26 +56,92 @@ import java.util.function.Function;
 @Singleton
 public class ApiService
 {
-	private static final MediaType JSON = MediaType.parse("application/json");
+	private static final MediaType JSON = MediaType.parse(BatchEncoding.JSON_TYPE);
+	private static final MediaType BINARY = MediaType.parse(BatchEncoding.BINARY_TYPE);
 	private static final ValidApiKey VALID_API_KEY = new ValidApiKey();
 	private static final long UNKNOWN = -1L;
+	/**
+	 * Response header the server sets to "reset" once it lost the name dictionaries of this client.
+	 */
+	private static final String NAME_DICTIONARY_HEADER = "x-name-dictionary";
+	/**
+	 * Response header with the highest batch seq the server has committed for the stream.
+	 */
+	private static final String ACK_SEQ_HEADER = "x-ack-seq";
+	/**
+	 * Response headers with the request weight the server still allows, and the seconds until its budget is restored.
+	 */
+	private static final String RATE_REMAINING_HEADER = "x-ratelimit-remaining";
+	private static final String RATE_RESET_HEADER = "x-ratelimit-reset";
+	/**
+	 * 429 replies a request may get before it is given up, leaving its batch in the spool.
+	 */
+	private static final int MAX_RATE_LIMITED = 8;
 
 	private final HttpUrl apiBase;
 	private final String version;
 	private final String characterEndpoint;
 	private final String configEndpoint;
 	private final String batchEndpoint;
+	private final String combinedEndpoint;
 	private final String goalEndpoint; //TODO implement
 	private final boolean devServer;
 
-	private final OkHttpClient httpClient;
+	/**
+	 * The clients shared http client, the API client is derived from it.
+	 */
+	private final OkHttpClient baseClient;
+	private final Dispatcher dispatcher;
 	private final Gson gson;
+	private final SpoolManager spools;
+	private final ScheduledExecutorService executor;
+	/**
+	 * Spools currently being replayed, keyed by account and endpoint.
+	 */
+	private final Set<String> replaying = ConcurrentHashMap.newKeySet();
+	private final UploadCoordinator coordinator;
+	private final AuthCache authCache;
+	private final DeliveryLedger ledger;
+	private final EventBus eventBus;
+	private final CircuitBreaker breaker;
+	private final RateLimiter limiter;
+	/**
+	 * Auth checks in flight keyed by API key, concurrent checks of a key share one request.
+	 */
+	private final Map<String, CompletableFuture<Boolean>> authChecks = new ConcurrentHashMap<>();
+	/**
+	 * Name dictionaries keyed by endpoint, reset with the session.
+	 */
+	private final Map<String, NameDictionary> dictionaries = new ConcurrentHashMap<>();
+	/**
+	 * Queues of stopped streams still delivering their last batches.
+	 */
+	private final Set<CompletableFuture<?>> drains = ConcurrentHashMap.newKeySet();
+	/**
+	 * Set once the server replied 415 to a compressed body.
+	 */
+	private volatile boolean gzipRejected;
+	/**
+	 * Set once the server replied 415 to a binary body, later batches are encoded as json
+	 * and spooled binary batches are converted before sending.
+	 */
+	private volatile boolean binaryRejected;
 	private String apiKey;
 	@Getter
-	@Setter
 	private long accountHash = UNKNOWN;
 	@Getter
 	private boolean authenticated;
+	/**
+	 * Live view of the remote api config, updated in place by the config loader.
+	 */
+	@Setter
+	@NonNull
+	private ApiConfig config = ApiConfig.getEmpty();
+	/**
+	 * Settings {@link #httpClient} was built with, rebuilt once the remote config changes them.
+	 */
+	private HttpProfile profile;
+	private OkHttpClient httpClient;
 
 	@Inject
 	public ApiService(@Named("api.base") HttpUrl apiBase,
@@ -57,46 +149,73 @@ public class ApiService
 					  @Named("api.endpoint.character") String characterEndpoint,
 					  @Named("api.endpoint.config") String configEndpoint,
 					  @Named("api.endpoint.batch") String batchEndpoint,
+					  @Named("api.endpoint.batch.combined") String combinedEndpoint,
 					  @Named("api.endpoint.goals") String goalEndpoint,
 					  @Named("devServer") boolean devServer,
 					  OkHttpClient httpClient,
-					  @IronClad Gson gson)
+					  @IronClad Gson gson,
+					  SpoolManager spools,
+					  ScheduledExecutorService executor,
+					  StateStore store,
+					  EventBus eventBus)
 	{
 		this.apiBase = apiBase;
 		this.version = version;
 		this.characterEndpoint = characterEndpoint;
 		this.configEndpoint = configEndpoint;
 		this.batchEndpoint = batchEndpoint;
+		this.combinedEndpoint = combinedEndpoint;
 		this.goalEndpoint = goalEndpoint;
 		this.devServer = devServer;
-		this.httpClient = httpClient;
+		this.baseClient = httpClient;
+		//Own per host limit, sharing the threads of the client
+		this.dispatcher = new Dispatcher(httpClient.dispatcher().executorService());
 		this.gson = gson;
+		this.spools = spools;
+		this.executor = executor;
+		this.coordinator = new UploadCoordinator(executor, this::postCombined);
+		this.authCache = new AuthCache(store);
+		this.ledger = new DeliveryLedger(store, executor);
+		this.eventBus = eventBus;
+		this.breaker = new CircuitBreaker(() -> this.config, this::onCircuitChanged);
+		this.limiter = new RateLimiter(() -> this.config);
 	}
 
 	/**
 	 * Authenticate the API key against the server.
 	 * <p>
 	 * If an invalid value is passed, the auth will fail early, returning false.
-	 * <p>
+	 * A key that authenticated within the remote TTL, in this or an earlier session, is trusted without a request.
+	 * Concurrent checks of the same key share one request.
 	 *
 	 * @param apiKey API key to authenticate
-	 * @return Result of authentication
+	 * @return Completes with the result of authentication, never exceptionally.
 	 */
-	public boolean checkAuth(@Nullable String apiKey)
+	@NonNull
+	public CompletableFuture<Boolean> checkAuth(@Nullable String apiKey)
 	{
 		if (!VALID_API_KEY.test(apiKey))
 		{
 			this.authenticated = false;
-			return false;
+			return CompletableFuture.completedFuture(false);
 		}
 
-		if (this.devServer)
+		String key = this.devServer ? Environment.DEV_KEY.get() : apiKey;
+		this.apiKey = key;
+
+		if (this.authCache.isValid(key, System.currentTimeMillis()))
 		{
-			apiKey = Environment.DEV_KEY.get();
+			log.debug("Authentication cached");
+			this.authenticated = true;
+			resetNameDictionaries();
+			return CompletableFuture.completedFuture(true);
 		}
 
-		this.apiKey = apiKey;
+		return this.authChecks.compute(key, (k, pending) -> pending != null && !pending.isDone() ? pending : requestAuth(k));
+	}
 
+	private CompletableFuture<Boolean> requestAuth(String key)
+	{
 		HttpUrl url = this.apiBase.newBuilder()
 			.addPathSegment(this.characterEndpoint)
 			.build();
@@ -105,45 +224,102 @@ public class ApiService
 			.url(url)
 			.header("accept", "application/json")
 			.header("content-type", "application/json")
-			.header("authorization", apiKey)
+			.header("authorization", key)
 			.header("x-plugin-version", this.version)
 			.get()
 			.build();
 
 		log.debug("Checking authentication...");
 
-		try (Response res = this.httpClient.newCall(req).execute())
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		send(this.characterEndpoint, req, sharedCallback(
+			response -> {
+				boolean success = response.isSuccessful();
+				if (success)
+				{
+					this.authCache.store(key, System.currentTimeMillis(), this.config.getAuthTtl());
+					log.debug("Authentication successful");
+				}
+				else if (response.code() == 401 || response.code() == 403)
+				{
+					this.authCache.invalidate();
+				}
+				onAuthChecked(key, success, future);
+			},
+			e -> {
+				log.debug("Authentication request failed");
+				onAuthChecked(key, false, future);
+			}
+		));
+		future.whenComplete((result, e) -> this.authChecks.remove(key, future));
+		return future;
+	}
+
+	private void onAuthChecked(String key, boolean success, CompletableFuture<Boolean> future)
+	{
+		//A newer key may have been set while this one was checked
+		if (key.equals(this.apiKey))
 		{
-			this.authenticated = res.isSuccessful();
-			log.debug("Authentication successful");
+			this.authenticated = success;
+			if (success)
+			{
+				//New connection, the server may not hold our names anymore.
+				resetNameDictionaries();
+			}
 		}
-		catch (Exception e)
+		future.complete(success);
+	}
+
+	public void setAccountHash(long accountHash)
+	{
+		if (this.accountHash != accountHash)
 		{
-			this.authenticated = false;
-			log.debug("Authentication request failed");
+			resetNameDictionaries();
 		}
+		this.accountHash = accountHash;
+	}
 
-		return this.authenticated;
+	/**
+	 * Start new name dictionary sessions, names are sent in full again until the server receives them.
+	 */
+	public void resetNameDictionaries()
+	{
+		this.dictionaries.values().forEach(NameDictionary::reset);
 	}
 
+	/**
+	 * Fetch the plugin configuration, unless it is unchanged since the cached copy.
+	 *
+	 * @param cached Validators of the configuration currently in use, null to always fetch.
+	 * @return Completes with the configuration and its validators,
+	 * or only the validators if the server replied 304 Not Modified.
+	 */
 	@NonNull
-	public CompletableFuture<RemoteConfig> getPluginConfiguration(@NonNull String apiKey)
+	public CompletableFuture<Versioned<RemoteConfig>> getPluginConfiguration(@NonNull String apiKey, @Nullable Versioned<?> cached)
 	{
-		CompletableFuture<RemoteConfig> future = new CompletableFuture<>();
+		CompletableFuture<Versioned<RemoteConfig>> future = new CompletableFuture<>();
 		HttpUrl url = this.apiBase.newBuilder()
 			.addPathSegment(this.configEndpoint)
 			.build();
 
-		Request request = new Request.Builder()
+		Request.Builder builder = new Request.Builder()
 			.url(url)
 			.header("accept", "application/json")
 			.header("content-type", "application/json")
 			.header("authorization", apiKey)
 			.header("x-plugin-version", this.version)
-			.get()
-			.build();
+			.get();
+		if (cached != null && cached.getEtag() != null)
+		{
+			builder.header("if-none-match", cached.getEtag());
+		}
+		if (cached != null && cached.getLastModified() != null)
+		{
+			builder.header("if-modified-since", cached.getLastModified());
+		}
+		Request request = builder.build();
 
-		this.httpClient.newCall(request).enqueue(new Callback()
+		send(this.configEndpoint, request, new Callback()
 		{
 			@Override
 			public void onFailure(@NonNull Call call, @NonNull IOException e)
@@ -156,19 +332,28 @@ public class ApiService
 			{
 				try (response)
 				{
+					onRateLimit(response);
+					if (response.code() == 304 && cached != null)
+					{
+						log.debug("Plugin configuration not modified");
+						future.complete(new Versioned<>(null,
+							firstNonNull(response.header("etag"), cached.getEtag()),
+							firstNonNull(response.header("last-modified"), cached.getLastModified())));
+						return;
+					}
 					if (!response.isSuccessful() || response.body() == null)
 					{
 						throw new IOException("Invalid response while getting plugin configuration: " + response);
 					}
 
-					String body = response.body().string();
-					RemoteConfig result = ApiService.this.gson.fromJson(body, RemoteConfig.class);
+					//Decoded and validated straight from the stream, see ConfigAdapterFactory
+					RemoteConfig result = ApiService.this.gson.fromJson(response.body().charStream(), RemoteConfig.class);
 					if (result == null)
 					{
-						throw new IOException("Failed to parse response body: " + body);
+						throw new IOException("Empty plugin configuration");
 					}
 					log.debug("Got plugin configuration: {}", result);
-					future.complete(result);
+					future.complete(new Versioned<>(result, response.header("etag"), response.header("last-modified")));
 
 				}
 				catch (Exception e)
@@ -181,6 +366,11 @@ public class ApiService
 		return future;
 	}
 
+	private static String firstNonNull(String first, String second)
+	{
+		return first != null ? first : second;
+	}
+
 	/**
 	 * Persist the account has with the current player name
 	 * against the authenticated API key.
@@ -210,7 +400,7 @@ public class ApiService
 
 		log.debug("Sending update character request for {}:{}", name, this.accountHash);
 
-		this.httpClient.newCall(req).enqueue(sharedCallback(
+		send(this.characterEndpoint, req, sharedCallback(
 			"character updated",
 			"error updating character"
 		));
@@ -218,54 +408,774 @@ public class ApiService
 
 	/**
 	 * Perform a batched update to the specified endpoint.
+	 * <p>
+	 * Records are streamed straight into the payload, no intermediate tree is built.
+	 * The serialized batch is written to the endpoints spool before sending,
+	 * so it can be replayed if the request fails or the client closes.
+	 * Every batch carries a unique id and sequence number, so the server can drop the copies retries and replays send.
+	 * Batches over the remote byte budget are split into requests of whole records, sent one after the other.
 	 *
-	 * @param endPoint  String representing the endpoint
-	 * @param batch     List of {@link T}
-	 * @param converter Function to convert {@link T} to {@link JsonObject}
-	 * @param <T>       Type of the {@link T}
+	 * @param endPoint String representing the endpoint
+	 * @param batch    List of {@link T}
+	 * @param writer   Writes each {@link T} as rows of the batch
+	 * @param <T>      Type of the {@link T}
+	 * @return Completes with true once the server accepts the batch, false if it was not delivered.
 	 */
-	public <T> void batchUpdateAsync(@NonNull String endPoint, @NonNull List<T> batch, @NonNull Function<T, JsonObject> converter)
+	@NonNull
+	public <T> CompletableFuture<Boolean> batchUpdateAsync(@NonNull String endPoint, @NonNull List<T> batch, @NonNull RecordWriter<? super T> writer)
+	{
+		return batchUpdateAsync(endPoint, RecordSource.of(batch, writer));
+	}
+
+	/**
+	 * Perform a batched update to the specified endpoint.
+	 * <p>
+	 * The rows are serialized before this returns, so the source may be reused once it does.
+	 *
+	 * @param endPoint String representing the endpoint
+	 * @param rows     Writes the rows of the batch
+	 * @return Completes with true once the server accepts the batch, false if it was not delivered.
+	 */
+	@NonNull
+	public CompletableFuture<Boolean> batchUpdateAsync(@NonNull String endPoint, @NonNull RecordSource rows)
+	{
+		if (this.accountHash == UNKNOWN)
+		{
+			log.warn("Account hash unknown, skipping batch update");
+			return CompletableFuture.completedFuture(false);
+		}
+
+		long account = this.accountHash;
+		NameEncoding encoding = this.config.getNameEncoding();
+		RecordSource source = encoding == NameEncoding.OMIT ? NameDictionary.omit(rows) : rows;
+		NameDictionary.Batch names = encoding == NameEncoding.DICTIONARY
+			? this.dictionaries.computeIfAbsent(endPoint, k -> new NameDictionary()).begin()
+			: null;
+		boolean binary = useBinary();
+		long seq = this.ledger.next(account, endPoint);
+		BatchHeader header = BatchHeader.builder()
+			.account(account)
+			.dictionary(names == null ? BatchEncoding.NO_DICTIONARY : names.getSession())
+			.seq(seq)
+			.batchId(UUID.randomUUID().toString())
+			.build();
+		byte[] payload;
+		byte[] spooled;
+		try
+		{
+			payload = encode(binary, header, names == null ? source : names.wrap(source));
+			if (payload.length > this.config.getMaxBatchBytes())
+			{
+				return sendSplit(account, endPoint, source, binary, seq);
+			}
+			// Replayed after a restart or a dictionary reset, so spooled with every name in full
+			spooled = names == null ? payload : encode(binary, header.toBuilder().dictionary(BatchEncoding.NO_DICTIONARY).build(), source);
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to serialize batch {}", endPoint, e);
+			return CompletableFuture.completedFuture(false);
+		}
+
+		SpoolEntry entry = spool(account, endPoint, spooled);
+
+		if (!this.authenticated)
+		{
+			log.warn("Not authenticated, batch {} {}", endPoint, entry == null ? "dropped" : "held in spool");
+			return CompletableFuture.completedFuture(false);
+		}
+
+		CompletableFuture<Boolean> sent = sendBatch(account, endPoint, payload, entry);
+		if (names != null)
+		{
+			NameDictionary.Batch defined = names;
+			sent.thenAccept(delivered -> {
+				if (delivered)
+				{
+					defined.delivered();
+				}
+			});
+		}
+		return sent;
+	}
+
+	/**
+	 * Send a batch over the byte budget as several requests of whole records, each waiting for the one before.
+	 * The parts define their names in full, so each can be replayed on its own.
+	 * Once a part is not delivered the rest stay in the spool, to be replayed in order.
+	 *
+	 * @param seq Sequence number already taken for the batch, used by the first part.
+	 */
+	private CompletableFuture<Boolean> sendSplit(long account, String endPoint, RecordSource rows, boolean binary, long seq) throws IOException
+	{
+		//Sized with the widest header a part can get
+		BatchHeader widest = BatchHeader.builder()
+			.account(account)
+			.seq(Long.MAX_VALUE)
+			.batchId(UUID.randomUUID().toString())
+			.build();
+		List<RecordSource> parts = BatchSplitter.split(rows, this.config.getMaxBatchBytes(), part -> encode(binary, widest, part));
+
+		List<byte[]> payloads = new ArrayList<>(parts.size());
+		for (int i = 0; i < parts.size(); i++)
+		{
+			BatchHeader header = widest.toBuilder()
+				.seq(i == 0 ? seq : this.ledger.next(account, endPoint))
+				.batchId(UUID.randomUUID().toString())
+				.build();
+			payloads.add(encode(binary, header, parts.get(i)));
+		}
+		log.debug("Splitting batch {} into {} requests", endPoint, payloads.size());
+
+		List<SpoolEntry> entries = new ArrayList<>(payloads.size());
+		for (byte[] payload : payloads)
+		{
+			entries.add(spool(account, endPoint, payload));
+		}
+
+		if (!this.authenticated)
+		{
+			log.warn("Not authenticated, split batch {} {}", endPoint, entries.contains(null) ? "dropped" : "held in spool");
+			return CompletableFuture.completedFuture(false);
+		}
+		return sendParts(account, endPoint, payloads, entries, 0);
+	}
+
+	private CompletableFuture<Boolean> sendParts(long account, String endPoint, List<byte[]> payloads, List<SpoolEntry> entries, int index)
+	{
+		return sendBatch(account, endPoint, payloads.get(index), entries.get(index)).thenCompose(delivered -> {
+			if (!delivered)
+			{
+				for (int i = index + 1; i < entries.size(); i++)
+				{
+					settle(account, endPoint, entries.get(i), UploadResult.FAILED);
+				}
+				return CompletableFuture.completedFuture(false);
+			}
+			return index + 1 < payloads.size()
+				? sendParts(account, endPoint, payloads, entries, index + 1)
+				: CompletableFuture.completedFuture(true);
+		});
+	}
+
+	private static byte[] encode(boolean binary, BatchHeader header, RecordSource rows) throws IOException
+	{
+		return binary ? BatchEncoding.binary(header, rows) : BatchEncoding.json(header, rows);
+	}
+
+	/**
+	 * Register a batch stream with the combined upload coordinator.
+	 * While the server supports combined uploads, the stream is asked for batches it would send soon whenever another stream sends.
+	 *
+	 * @param owner    Key used to unregister the stream.
+	 * @param flushDue Requests a flush of the streams batch if it is due within the given MS, must not block.
+	 */
+	public void registerStream(@NonNull Object owner, @NonNull LongConsumer flushDue)
+	{
+		this.coordinator.register(owner, flushDue);
+	}
+
+	/**
+	 * Unregister a stream whose queue is draining, {@link #drained()} waits for it.
+	 */
+	public void unregisterStream(@NonNull Object owner, @NonNull CompletableFuture<?> drain)
+	{
+		this.coordinator.unregister(owner);
+		this.drains.add(drain);
+		drain.whenComplete((result, e) -> this.drains.remove(drain));
+	}
+
+	/**
+	 * Write the committed batch numbers not yet persisted, call before stopping.
+	 */
+	public void saveLedger()
+	{
+		this.ledger.save();
+	}
+
+	/**
+	 * @return Completes once every unregistered stream finished draining, after which auth and the spools may go.
+	 */
+	public CompletableFuture<Void> drained()
+	{
+		return CompletableFuture.allOf(this.drains.toArray(new CompletableFuture[0])).handle((v, e) -> null);
+	}
+
+	public CircuitState getCircuitState()
+	{
+		return this.breaker.getState();
+	}
+
+	/**
+	 * Resend batches left in the spool by failed requests or previous sessions, oldest first.
+	 */
+	public void replaySpooled()
 	{
 		if (!this.authenticated || this.accountHash == UNKNOWN)
 		{
-			log.warn("Not authenticated or account hash unknown, skipping batch update");
 			return;
 		}
 
-		JsonArray items = new JsonArray();
+		for (String endPoint : this.spools.pending(this.accountHash))
+		{
+			replay(this.accountHash, endPoint);
+		}
+	}
+
+	private SpoolEntry spool(long account, String endPoint, byte[] payload)
+	{
+		BatchSpool spool = this.spools.get(account, endPoint);
+		if (spool == null)
+		{
+			return null;
+		}
+		try
+		{
+			return spool.append(payload);
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to spool batch {}", endPoint, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Send spooled batches one at a time, so they arrive in the order they were created.
+	 */
+	private void replay(long account, String endPoint)
+	{
+		String key = account + "/" + endPoint;
+		if (!this.replaying.add(key))
+		{
+			return;
+		}
+		replayNext(account, endPoint, key);
+	}
+
+	private void replayNext(long account, String endPoint, String key)
+	{
+		BatchSpool spool = this.spools.get(account, endPoint);
+		SpoolEntry entry = spool == null || !this.authenticated || account != this.accountHash ? null : spool.next();
+		if (entry == null)
+		{
+			this.replaying.remove(key);
+			return;
+		}
 
-		for (T item : batch)
+		if (isAcked(account, endPoint, entry.getPayload()))
 		{
-			JsonObject o = converter.apply(item);
-			if (o != null)
+			log.debug("Spooled batch {} #{} already committed by the server", endPoint, entry.getSeq());
+			settle(account, endPoint, entry, UploadResult.DELIVERED);
+			replayNext(account, endPoint, key);
+			return;
+		}
+
+		log.debug("Replaying spooled batch {} #{}", endPoint, entry.getSeq());
+		postBatch(account, endPoint, entry.getPayload()).thenAccept(result -> {
+			settle(account, endPoint, entry, result);
+			if (result != UploadResult.FAILED)
+			{
+				replayNext(account, endPoint, key);
+			}
+			else
 			{
-				items.add(o);
+				this.replaying.remove(key);
 			}
+		});
+	}
+
+	/**
+	 * @return true if the server reported a high-water mark at or above the seq of the batch.
+	 */
+	private boolean isAcked(long account, String endPoint, byte[] payload)
+	{
+		try
+		{
+			long seq = BatchEncoding.header(payload).getSeq();
+			return seq != 0 && seq <= this.ledger.acked(account, endPoint);
+		}
+		catch (IOException e)
+		{
+			//Let the server decide
+			log.debug("Unreadable spooled batch header {}", endPoint, e);
+			return false;
 		}
+	}
 
-		JsonObject data = new JsonObject();
-		data.addProperty("account_hash", this.accountHash);
-		data.add("batch", items);
+	/**
+	 * Record the high-water mark the server reported for a stream.
+	 * Only an explicit mark is trusted, a success for one batch says nothing about earlier ones still in flight.
+	 */
+	private void onAcked(long account, String endPoint, @Nullable String seq)
+	{
+		if (seq == null)
+		{
+			return;
+		}
+		try
+		{
+			this.ledger.ack(account, endPoint, Long.parseLong(seq.trim()));
+		}
+		catch (NumberFormatException e)
+		{
+			log.debug("Ignoring malformed {} {}", ACK_SEQ_HEADER, seq);
+		}
+	}
 
-		RequestBody body = RequestBody.create(JSON, data.toString());
+	private CompletableFuture<Boolean> sendBatch(long account, String endPoint, byte[] payload, SpoolEntry entry)
+	{
+		log.debug("Sending batch {} update", endPoint);
+		// Combined envelopes embed json bodies, binary batches go to their own endpoint
+		CompletableFuture<UploadResult> upload = this.config.isCombinedBatch() && !BatchEncoding.isBinary(payload)
+			? this.coordinator.submit(account, endPoint, payload, this.config.getCombinedLinger())
+			: postBatch(account, endPoint, payload);
+		return upload.thenApply(result -> {
+			settle(account, endPoint, entry, result);
+			if (result == UploadResult.DELIVERED)
+			{
+				//We have a working connection, anything left behind can go now.
+				replaySpooled();
+			}
+			return result == UploadResult.DELIVERED;
+		});
+	}
 
+	private void settle(long account, String endPoint, SpoolEntry entry, UploadResult result)
+	{
+		BatchSpool spool = entry == null ? null : this.spools.get(account, endPoint);
+		if (spool == null)
+		{
+			return;
+		}
+		switch (result)
+		{
+			case REJECTED:
+				log.warn("Discarding batch {} #{} rejected by the server", endPoint, entry.getSeq());
+				// fall through, a rejected batch is never retried
+			case DELIVERED:
+				spool.ack(entry.getSeq());
+				break;
+			case FAILED:
+				spool.release(entry.getSeq());
+				break;
+		}
+	}
+
+	/**
+	 * Upload a serialized batch, retrying transient failures with capped exponential backoff.
+	 * Retries are scheduled, never blocking the caller or other uploads.
+	 */
+	private CompletableFuture<UploadResult> postBatch(long account, String endPoint, byte[] payload)
+	{
 		HttpUrl url = this.apiBase.newBuilder()
 			.addPathSegment(this.batchEndpoint)
 			.addPathSegment(endPoint)
 			.build();
 
-		Request request = sharedRequest(url)
-			.put(body)
+		CompletableFuture<UploadResult> future = new CompletableFuture<>();
+		attempt(url, endPoint, payload, 1, 0, future, response -> {
+			UploadResult result = UploadResult.of(response.code());
+			onAcked(account, endPoint, response.header(ACK_SEQ_HEADER));
+			if (result == UploadResult.DELIVERED)
+			{
+				log.debug("Success: Batch {} updated", endPoint);
+			}
+			else
+			{
+				log.warn("Failed: error updating batch {} Code: {} Message: {}", endPoint, response.code(), response.message());
+			}
+			return result;
+		}, UploadResult.FAILED);
+		return future;
+	}
+
+	/**
+	 * Upload several batches in one request to the combined endpoint.
+	 * <p>
+	 * Each section carries the same body its own endpoint would receive,
+	 * the server replies with a status code per section in the same order.
+	 * Sections the server did not settle, or all of them if the combined endpoint is unavailable,
+	 * fall back to their own endpoint.
+	 */
+	private CompletableFuture<List<UploadResult>> postCombined(List<UploadCoordinator.Section> sections)
+	{
+		if (sections.size() == 1)
+		{
+			UploadCoordinator.Section section = sections.get(0);
+			return postBatch(section.getAccount(), section.getEndPoint(), section.getPayload()).thenApply(List::of);
+		}
+		long account = sections.get(0).getAccount();
+		// Together over the byte budget, or spanning an account switch, each to its own endpoint
+		if (sections.stream().mapToLong(section -> section.getPayload().length).sum() > this.config.getMaxBatchBytes()
+			|| sections.stream().anyMatch(section -> section.getAccount() != account))
+		{
+			return postSeparately(sections, new ArrayList<>(Collections.nCopies(sections.size(), (UploadResult) null)));
+		}
+
+		Buffer envelope = new Buffer()
+			.writeUtf8("{\"account_hash\":")
+			.writeDecimalLong(account)
+			.writeUtf8(",\"sections\":[");
+		for (int i = 0; i < sections.size(); i++)
+		{
+			UploadCoordinator.Section section = sections.get(i);
+			envelope.writeUtf8(i == 0 ? "{\"stream\":" : ",{\"stream\":")
+				.writeUtf8(this.gson.toJson(section.getEndPoint()))
+				.writeUtf8(",\"body\":")
+				.write(section.getPayload())
+				.writeUtf8("}");
+		}
+		byte[] payload = envelope.writeUtf8("]}").readByteArray();
+
+		HttpUrl url = this.apiBase.newBuilder()
+			.addPathSegment(this.batchEndpoint)
+			.addPathSegment(this.combinedEndpoint)
 			.build();
 
-		log.debug("Sending batch {} update", endPoint);
+		List<UploadResult> failed = new ArrayList<>(Collections.nCopies(sections.size(), UploadResult.FAILED));
+		CompletableFuture<List<UploadResult>> future = new CompletableFuture<>();
+		attempt(url, this.combinedEndpoint, payload, 1, 0, future, response -> {
+			List<UploadResult> results = new ArrayList<>(Collections.nCopies(sections.size(), (UploadResult) null));
+			if (response.isSuccessful())
+			{
+				CombinedReply reply = null;
+				try
+				{
+					reply = response.body() == null ? null : this.gson.fromJson(response.body().charStream(), CombinedReply.class);
+				}
+				catch (Exception e)
+				{
+					log.warn("Unreadable combined batch reply", e);
+				}
+				if (reply != null && reply.acked != null)
+				{
+					reply.acked.forEach((stream, seq) -> {
+						if (seq != null)
+						{
+							this.ledger.ack(account, stream, seq);
+						}
+					});
+				}
+				if (reply == null || reply.results == null)
+				{
+					// Accepted as a whole
+					return new ArrayList<>(Collections.nCopies(sections.size(), UploadResult.DELIVERED));
+				}
+				for (int i = 0; i < Math.min(sections.size(), reply.results.size()); i++)
+				{
+					Integer code = reply.results.get(i);
+					results.set(i, code == null ? null : UploadResult.of(code));
+				}
+			}
+			else
+			{
+				log.warn("Combined batch unavailable, Code: {} Message: {}", response.code(), response.message());
+			}
+			return results;
+		}, failed);
 
-		this.httpClient.newCall(request).enqueue(sharedCallback(
-			"Batch " + endPoint + " updated",
-			"error updating batch " + endPoint
+		return future.thenCompose(results -> postSeparately(sections, results));
+	}
+
+	/**
+	 * Send the sections without a result to their own endpoint, each for the account it was queued for.
+	 */
+	private CompletableFuture<List<UploadResult>> postSeparately(List<UploadCoordinator.Section> sections, List<UploadResult> results)
+	{
+		List<CompletableFuture<UploadResult>> settled = new ArrayList<>(sections.size());
+		for (int i = 0; i < sections.size(); i++)
+		{
+			UploadCoordinator.Section section = sections.get(i);
+			UploadResult result = results.get(i);
+			settled.add(result != null
+				? CompletableFuture.completedFuture(result)
+				: postBatch(section.getAccount(), section.getEndPoint(), section.getPayload()));
+		}
+		return CompletableFuture.allOf(settled.toArray(new CompletableFuture[0]))
+			.thenApply(v -> settled.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Send a request once the rate limit allows, retrying transient failures with capped exponential backoff.
+	 * Requests the server turns away with 429 are sent again after the delay it asks for, without using up an attempt,
+	 * up to {@value #MAX_RATE_LIMITED} times.
+	 *
+	 * @param limited Times the request was turned away with 429.
+	 * @param result Converts a final response, called while the response is open.
+	 * @param failed Value to complete with once the retries ran out.
+	 */
+	private <R> void attempt(HttpUrl url, String label, byte[] payload, int attempt, int limited, CompletableFuture<R> future, Function<Response, R> result, R failed)
+	{
+		if (!this.breaker.tryAcquire(System.currentTimeMillis()))
+		{
+			//Nothing is sent while the server is failing, the batch stays in the spool
+			log.debug("Circuit {}, holding batch {}", this.breaker.getState(), label);
+			future.complete(failed);
+			return;
+		}
+
+		long wait = this.limiter.reserve(label, System.currentTimeMillis());
+		if (wait <= 0)
+		{
+			transmit(url, label, payload, attempt, limited, future, result, failed);
+			return;
+		}
+		log.debug("Rate limited, deferring batch {} by {}ms", label, wait);
+		this.executor.schedule(() -> transmit(url, label, payload, attempt, limited, future, result, failed), wait, TimeUnit.MILLISECONDS);
+	}
+
+	private <R> void transmit(HttpUrl url, String label, byte[] payload, int attempt, int limited, CompletableFuture<R> future, Function<Response, R> result, R failed)
+	{
+		Request.Builder builder = sharedRequest(url);
+		byte[] body = payload;
+		boolean binary = BatchEncoding.isBinary(payload);
+		if (binary && this.binaryRejected)
+		{
+			try
+			{
+				body = BatchEncoding.binaryToJson(payload);
+				binary = false;
+			}
+			catch (IOException e)
+			{
+				log.error("Unable to convert binary batch {}", label, e);
+				this.breaker.release();
+				future.complete(failed);
+				return;
+			}
+		}
+		boolean gzip = useGzip(body);
+		if (gzip)
+		{
+			try
+			{
+				body = Gzip.compress(body);
+				builder.header("content-encoding", "gzip");
+			}
+			catch (IOException e)
+			{
+				log.debug("Unable to compress batch {}", label, e);
+				gzip = false;
+			}
+		}
+
+		Request request = builder
+			.put(RequestBody.create(binary ? BINARY : JSON, body))
+			.build();
+
+		boolean compressed = gzip;
+		boolean encoded = binary;
+		long sent = System.currentTimeMillis();
+		client().newCall(request).enqueue(sharedCallback(
+			response -> {
+				long now = System.currentTimeMillis();
+				this.breaker.onResult(response.code() >= 500, now - sent, now);
+				if (response.code() == 401)
+				{
+					//Key revoked since it was cached, check it properly next time.
+					this.authCache.invalidate();
+				}
+				if ("reset".equalsIgnoreCase(response.header(NAME_DICTIONARY_HEADER)))
+				{
+					log.debug("Server reset the name dictionaries");
+					resetNameDictionaries();
+				}
+				if (response.code() == 415)
+				{
+					// Each fallback is taken once, a plain json batch turned away is rejected below
+					String accept = response.header("accept");
+					if (encoded && (accept == null || !accept.contains(BatchEncoding.BINARY_TYPE)))
+					{
+						log.warn("Server does not accept binary batches, sending json");
+						this.binaryRejected = true;
+						attempt(url, label, payload, attempt, limited, future, result, failed);
+						return;
+					}
+					if (compressed)
+					{
+						log.warn("Server does not accept compressed batches, sending uncompressed");
+						this.gzipRejected = true;
+						attempt(url, label, payload, attempt, limited, future, result, failed);
+						return;
+					}
+				}
+				if (response.code() == 429)
+				{
+					if (limited + 1 >= MAX_RATE_LIMITED)
+					{
+						log.warn("Batch {} rate limited {} times, leaving it for later", label, limited + 1);
+						future.complete(failed);
+						return;
+					}
+					if (response.header("retry-after") == null)
+					{
+						//No delay given, wait longer each time
+						this.limiter.pause(now + backoff(attempt + limited), now);
+					}
+					log.debug("Batch {} rate limited by the server", label);
+					attempt(url, label, payload, attempt, limited + 1, future, result, failed);
+					return;
+				}
+				if (UploadResult.of(response.code()) == null)
+				{
+					retry(url, label, payload, attempt, limited, future, result, failed, "code " + response.code());
+					return;
+				}
+				future.complete(result.apply(response));
+			},
+			e -> {
+				long now = System.currentTimeMillis();
+				this.breaker.onResult(true, now - sent, now);
+				retry(url, label, payload, attempt, limited, future, result, failed, e.getMessage());
+			}
 		));
 	}
 
+	private <R> void retry(HttpUrl url, String label, byte[] payload, int attempt, int limited, CompletableFuture<R> future, Function<Response, R> result, R failed, String reason)
+	{
+		if (attempt >= this.config.getRetryAttempts())
+		{
+			log.warn("Error: error updating batch {} after {} attempts: {}", label, attempt, reason);
+			future.complete(failed);
+			return;
+		}
+
+		long delay = backoff(attempt);
+		log.debug("Batch {} attempt {} failed ({}), retrying in {}ms", label, attempt, reason, delay);
+		this.executor.schedule(() -> attempt(url, label, payload, attempt + 1, limited, future, result, failed), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Publish the circuit state, and schedule the probe once it opens.
+	 * Called under the breakers lock.
+	 */
+	private void onCircuitChanged(CircuitState state)
+	{
+		log.debug("Circuit {}", state);
+		this.executor.execute(() -> this.eventBus.post(new CircuitStateChanged(state)));
+		if (state == CircuitState.OPEN)
+		{
+			long delay = this.breaker.remainingOpen(System.currentTimeMillis());
+			this.executor.schedule(this::probe, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Let a single upload through once the circuit has been open long enough.
+	 * The oldest spooled batch is the probe, or the next flush if nothing is spooled.
+	 */
+	private void probe()
+	{
+		if (this.breaker.halfOpen(System.currentTimeMillis()))
+		{
+			replaySpooled();
+		}
+	}
+
+	/**
+	 * Encode new batches in the binary format while the server advertises it and has not turned it away this session.
+	 */
+	private boolean useBinary()
+	{
+		return this.config.isBinaryBatches() && !this.binaryRejected;
+	}
+
+	/**
+	 * Compress batches at or above the remote threshold, unless the server turned compressed bodies away this session.
+	 */
+	private boolean useGzip(byte[] payload)
+	{
+		int threshold = this.config.getGzipThreshold();
+		return threshold > 0 && payload.length >= threshold && !this.gzipRejected;
+	}
+
+	/**
+	 * @return The API client for the current remote config.
+	 */
+	private synchronized OkHttpClient client()
+	{
+		HttpProfile current = HttpProfile.of(this.config);
+		if (!current.equals(this.profile))
+		{
+			log.debug("Building http client {}", current);
+			this.httpClient = current.apply(this.baseClient, this.dispatcher, this.httpClient);
+			this.profile = current;
+		}
+		return this.httpClient;
+	}
+
+	/**
+	 * Send a request once the rate limit allows, without blocking.
+	 */
+	private void send(String endpoint, Request request, Callback callback)
+	{
+		long wait = this.limiter.reserve(endpoint, System.currentTimeMillis());
+		if (wait <= 0)
+		{
+			client().newCall(request).enqueue(callback);
+			return;
+		}
+		log.debug("Rate limited, deferring {} by {}ms", endpoint, wait);
+		this.executor.schedule(() -> client().newCall(request).enqueue(callback), wait, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Apply the Retry-After and budget headers of a response to the rate limiter.
+	 */
+	private void onRateLimit(Response response)
+	{
+		long now = System.currentTimeMillis();
+		String retryAfter = response.header("retry-after");
+		if (retryAfter != null && (response.code() == 429 || response.code() == 503))
+		{
+			Date date = response.headers().getDate("retry-after");
+			Long seconds = parseLong(retryAfter);
+			if (seconds != null || date != null)
+			{
+				long until = seconds != null ? now + TimeUnit.SECONDS.toMillis(seconds) : date.getTime();
+				log.debug("Server asked to retry after {}ms", until - now);
+				this.limiter.pause(until, now);
+			}
+		}
+
+		Long remaining = parseLong(response.header(RATE_REMAINING_HEADER));
+		if (remaining != null)
+		{
+			Long reset = parseLong(response.header(RATE_RESET_HEADER));
+			this.limiter.budget(remaining, reset == null ? 0 : TimeUnit.SECONDS.toMillis(reset), now);
+		}
+	}
+
+	@Nullable
+	private static Long parseLong(@Nullable String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Exponential delay capped at the max, with the upper half randomized
+	 * so clients that failed together don't retry together.
+	 */
+	private long backoff(int attempt)
+	{
+		long cap = this.config.getRetryMaxDelay();
+		long delay = Math.min(cap, this.config.getRetryBaseDelay() << Math.min(attempt - 1, 30));
+		long half = Math.max(1, delay / 2);
+		return half + ThreadLocalRandom.current().nextLong(half);
+	}
+
 	/**
 	 * Request headers for all account based requests.
 	 */
@@ -304,6 +1214,7 @@ public class ApiService
 			{
 				try (response)
 				{
+					onRateLimit(response);
 					responseConsumer.accept(response);
 				}
 				catch (Exception e)
@@ -337,6 +1248,16 @@ public class ApiService
 		);
 	}
 
+	/**
+	 * Reply from the combined batch endpoint, a status code per section
+	 * and optionally the high-water mark per stream.
+	 */
+	private static class CombinedReply
+	{
+		List<Integer> results;
+		Map<String, Long> acked;
+	}
+
 	/**
 	 * Shared future for all get requests.
 	 *
@@ -348,7 +1269,8 @@ public class ApiService
 	private <T> CompletableFuture<T> sharedFuture(Request request, Class<T> resType)
 	{
 		CompletableFuture<T> future = new CompletableFuture<>();
-		this.httpClient.newCall(request).enqueue(new Callback()
+		List<String> path = request.url().pathSegments();
+		send(path.get(path.size() - 1), request, new Callback()
 		{
 			@Override
 			public void onFailure(@NonNull Call call, @NonNull IOException e)
@@ -361,6 +1283,7 @@ public class ApiService
 			{
 				try (response)
 				{
+					onRateLimit(response);
 					if (!response.isSuccessful())
 					{
 						log.warn("Request to {} failed with code: {}", request.url(), response.code());
@@ -0,0 +1,84 @@
+package com.ironclad.clangoals.components.service.api;
+
+import com.google.common.hash.Hashing;
+import com.ironclad.clangoals.util.StateStore;
+import java.nio.charset.StandardCharsets;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Remembers the last successful authentication across sessions, so reconnects skip the round trip while it is fresh.
+ * <p>
+ * Stored as "keyHash:expiresAt", only a hash of the key is kept.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class AuthCache
+{
+	static final String STATE_KEY = "authCache";
+
+	@NonNull
+	private final StateStore store;
+	private String keyHash;
+	private long expiresAt;
+	private boolean loaded;
+
+	/**
+	 * @return true if the key authenticated within its TTL.
+	 */
+	synchronized boolean isValid(@NonNull String key, long now)
+	{
+		load();
+		return now < this.expiresAt && hash(key).equals(this.keyHash);
+	}
+
+	synchronized void store(@NonNull String key, long now, long ttl)
+	{
+		this.keyHash = hash(key);
+		this.expiresAt = now + ttl;
+		this.loaded = true;
+		this.store.set(STATE_KEY, this.keyHash + ":" + this.expiresAt);
+	}
+
+	synchronized void invalidate()
+	{
+		if (this.loaded && this.keyHash == null)
+		{
+			return;
+		}
+		this.keyHash = null;
+		this.expiresAt = 0;
+		this.loaded = true;
+		this.store.set(STATE_KEY, null);
+	}
+
+	private void load()
+	{
+		if (this.loaded)
+		{
+			return;
+		}
+		this.loaded = true;
+		String stored = this.store.get(STATE_KEY);
+		int split = stored == null ? -1 : stored.lastIndexOf(':');
+		if (split <= 0)
+		{
+			return;
+		}
+		try
+		{
+			this.expiresAt = Long.parseLong(stored.substring(split + 1));
+			this.keyHash = stored.substring(0, split);
+		}
+		catch (NumberFormatException e)
+		{
+			log.debug("Ignoring malformed auth cache entry");
+		}
+	}
+
+	private static String hash(String key)
+	{
+		return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+	}
+}
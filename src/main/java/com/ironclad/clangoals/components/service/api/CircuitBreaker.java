@@ -0,0 +1,186 @@
+package com.ironclad.clangoals.components.service.api;
+
+import com.ironclad.clangoals.components.service.config.dto.ApiConfig;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Stops batch uploads while the server is failing.
+ * <p>
+ * The outcomes of the last {@value #WINDOW} requests are kept, slow responses count as failures.
+ * Once at least {@value #MIN_CALLS} are known and the failure rate reaches the remote threshold the circuit opens.
+ * It stays open for the remote open time, randomized and doubled for each failed probe,
+ * so clients don't all come back the moment the server does. Then a single probe is let through.
+ */
+@RequiredArgsConstructor
+class CircuitBreaker
+{
+	static final int WINDOW = 10;
+	static final int MIN_CALLS = 4;
+	static final long MAX_OPEN_TIME = Duration.of(10, ChronoUnit.MINUTES).toMillis();
+
+	@NonNull
+	private final Supplier<ApiConfig> config;
+	/**
+	 * Called with each new state while holding the breakers lock, must not block.
+	 */
+	@NonNull
+	private final Consumer<CircuitState> listener;
+	/**
+	 * Ring of recent outcomes, true for a failure.
+	 */
+	private final boolean[] outcomes = new boolean[WINDOW];
+	private int calls;
+	private int failures;
+	private int next;
+	private CircuitState state = CircuitState.CLOSED;
+	/**
+	 * Times opened since the circuit was last closed.
+	 */
+	private int trips;
+	private long openUntil;
+	private boolean probing;
+
+	synchronized CircuitState getState()
+	{
+		return this.state;
+	}
+
+	/**
+	 * @return MS until the open circuit lets a probe through, 0 if it is not open.
+	 */
+	synchronized long remainingOpen(long now)
+	{
+		return this.state == CircuitState.OPEN ? Math.max(0, this.openUntil - now) : 0;
+	}
+
+	/**
+	 * Ask to send a request. Every granted request must report {@link #onResult(boolean, long, long)}, or {@link #release()} if it is not sent.
+	 *
+	 * @return false if the request must not be sent.
+	 */
+	synchronized boolean tryAcquire(long now)
+	{
+		switch (this.state)
+		{
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (!halfOpen(now))
+				{
+					return false;
+				}
+				// fall through, the open time passed and this request may be the probe
+			case HALF_OPEN:
+			default:
+				if (this.probing)
+				{
+					return false;
+				}
+				this.probing = true;
+				return true;
+		}
+	}
+
+	/**
+	 * Give back a granted request that was not sent, a probe can be sent by the next request instead.
+	 */
+	synchronized void release()
+	{
+		if (this.state == CircuitState.HALF_OPEN)
+		{
+			this.probing = false;
+		}
+	}
+
+	/**
+	 * Move an open circuit whose open time has passed to half open.
+	 *
+	 * @return true if the circuit is now half open.
+	 */
+	synchronized boolean halfOpen(long now)
+	{
+		if (this.state == CircuitState.OPEN && now >= this.openUntil)
+		{
+			this.probing = false;
+			setState(CircuitState.HALF_OPEN);
+		}
+		return this.state == CircuitState.HALF_OPEN;
+	}
+
+	/**
+	 * @param failed  The request failed, or the server answered with a server error.
+	 * @param latency MS from sending to the response.
+	 */
+	synchronized void onResult(boolean failed, long latency, long now)
+	{
+		boolean failure = failed || latency > this.config.get().getBreakerSlowCall();
+		switch (this.state)
+		{
+			case HALF_OPEN:
+				this.probing = false;
+				if (failure)
+				{
+					open(now);
+				}
+				else
+				{
+					this.trips = 0;
+					setState(CircuitState.CLOSED);
+				}
+				break;
+			case CLOSED:
+				record(failure);
+				if (this.calls >= MIN_CALLS && this.failures * 100 >= this.config.get().getBreakerFailureRate() * this.calls)
+				{
+					open(now);
+				}
+				break;
+			case OPEN:
+				//Sent before the circuit opened
+				break;
+		}
+	}
+
+	private void record(boolean failure)
+	{
+		if (this.calls == WINDOW)
+		{
+			this.failures -= this.outcomes[this.next] ? 1 : 0;
+		}
+		else
+		{
+			this.calls++;
+		}
+		this.outcomes[this.next] = failure;
+		this.failures += failure ? 1 : 0;
+		this.next = (this.next + 1) % WINDOW;
+	}
+
+	private void open(long now)
+	{
+		long base = Math.min(MAX_OPEN_TIME, this.config.get().getBreakerOpenTime() << Math.min(this.trips, 10));
+		this.trips++;
+		//Anywhere between half and one and a half times the open time
+		long half = Math.max(1, base / 2);
+		this.openUntil = now + half + ThreadLocalRandom.current().nextLong(base);
+		this.calls = 0;
+		this.failures = 0;
+		this.next = 0;
+		setState(CircuitState.OPEN);
+	}
+
+	private void setState(CircuitState state)
+	{
+		if (this.state != state)
+		{
+			this.state = state;
+			this.listener.accept(state);
+		}
+	}
+}
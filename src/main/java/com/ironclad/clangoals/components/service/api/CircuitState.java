@@ -0,0 +1,20 @@
+package com.ironclad.clangoals.components.service.api;
+
+/**
+ * State of the circuit breaker around batch uploads.
+ */
+public enum CircuitState
+{
+	/**
+	 * Uploads are sent.
+	 */
+	CLOSED,
+	/**
+	 * The server is failing, uploads are held until the open time passes.
+	 */
+	OPEN,
+	/**
+	 * A single probe upload is allowed through, its outcome closes or reopens the circuit.
+	 */
+	HALF_OPEN
+}
@@ -0,0 +1,11 @@
+package com.ironclad.clangoals.components.service.api;
+
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+public class CircuitStateChanged
+{
+	@NonNull
+	CircuitState state;
+}
@@ -0,0 +1,155 @@
+package com.ironclad.clangoals.components.service.api;
+
+import com.ironclad.clangoals.util.StateStore;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Batch sequence numbers per account and stream, kept across sessions.
+ * <p>
+ * Each batch is numbered when created, the server deduplicates on it and reports the highest one it has committed.
+ * Spooled batches at or below that mark were delivered already and are not sent again.
+ * <p>
+ * Numbers are reserved in blocks, so the counter is written once per block rather than once per batch.
+ * Numbers a session left unused are skipped after a restart, the server only needs them to increase.
+ * The committed mark is written at most once per {@link #ACK_SAVE_DELAY}ms and on {@link #save()},
+ * a stale one only means a batch the server already has is sent again.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class DeliveryLedger
+{
+	private static final String NEXT_KEY = "seq.";
+	private static final String ACKED_KEY = "acked.";
+	private static final long SEQ_BLOCK = 64;
+	static final long ACK_SAVE_DELAY = Duration.of(10, ChronoUnit.SECONDS).toMillis();
+
+	@NonNull
+	private final StateStore store;
+	@NonNull
+	private final ScheduledExecutorService executor;
+	/**
+	 * Last number handed out per counter, the store holds the end of its reserved block.
+	 */
+	private final Map<String, Long> issued = new HashMap<>();
+	/**
+	 * Highest committed number per key, read from the store on first use.
+	 */
+	private final Map<String, Long> acked = new HashMap<>();
+	/**
+	 * Keys whose committed number moved since it was last written.
+	 */
+	private final Set<String> unsaved = new HashSet<>();
+	private boolean saveScheduled;
+	/**
+	 * Held while writing the committed numbers, so an older snapshot never overwrites a newer one.
+	 */
+	private final Object saveLock = new Object();
+
+	/**
+	 * @return The sequence number for a new batch, starting at 1.
+	 */
+	synchronized long next(long account, @NonNull String stream)
+	{
+		String key = key(NEXT_KEY, account, stream);
+		long reserved = read(key);
+		//Never reuse a number the server has seen, even if the counter was lost
+		long seq = Math.max(this.issued.getOrDefault(key, reserved), acked(account, stream)) + 1;
+		this.issued.put(key, seq);
+		if (seq > reserved)
+		{
+			this.store.set(key, String.valueOf(seq + SEQ_BLOCK - 1));
+		}
+		return seq;
+	}
+
+	/**
+	 * @return The highest sequence number the server committed, 0 if none.
+	 */
+	synchronized long acked(long account, @NonNull String stream)
+	{
+		return this.acked.computeIfAbsent(key(ACKED_KEY, account, stream), this::read);
+	}
+
+	/**
+	 * Record the servers high-water mark, it never moves back.
+	 */
+	void ack(long account, @NonNull String stream, long seq)
+	{
+		synchronized (this)
+		{
+			if (seq <= acked(account, stream))
+			{
+				return;
+			}
+			String key = key(ACKED_KEY, account, stream);
+			this.acked.put(key, seq);
+			this.unsaved.add(key);
+			if (this.saveScheduled)
+			{
+				return;
+			}
+			this.saveScheduled = true;
+		}
+
+		try
+		{
+			this.executor.schedule(this::save, ACK_SAVE_DELAY, TimeUnit.MILLISECONDS);
+		}
+		catch (RejectedExecutionException e)
+		{
+			save();
+		}
+	}
+
+	/**
+	 * Write the committed numbers that moved since the last save.
+	 */
+	void save()
+	{
+		synchronized (this.saveLock)
+		{
+			Map<String, Long> changed = new HashMap<>();
+			synchronized (this)
+			{
+				this.saveScheduled = false;
+				this.unsaved.forEach(key -> changed.put(key, this.acked.get(key)));
+				this.unsaved.clear();
+			}
+			changed.forEach((key, seq) -> this.store.set(key, String.valueOf(seq)));
+		}
+	}
+
+	private long read(String key)
+	{
+		String stored = this.store.get(key);
+		if (stored == null)
+		{
+			return 0;
+		}
+		try
+		{
+			return Long.parseLong(stored);
+		}
+		catch (NumberFormatException e)
+		{
+			log.debug("Ignoring malformed ledger entry {}", key);
+			return 0;
+		}
+	}
+
+	private static String key(String prefix, long account, String stream)
+	{
+		return prefix + account + "." + stream;
+	}
+}
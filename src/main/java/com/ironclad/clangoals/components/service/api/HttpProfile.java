@@ -0,0 +1,66 @@
+package com.ironclad.clangoals.components.service.api;
+
+import com.ironclad.clangoals.components.service.config.dto.ApiConfig;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import lombok.NonNull;
+import lombok.Value;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Connection settings of the client used for the API, taken from the remote api config.
+ * <p>
+ * The client is derived from the shared one, keeping its interceptors and thread pool,
+ * but has its own dispatcher and connection pool so other plugins don't hold up our requests or we theirs.
+ */
+@Value
+class HttpProfile
+{
+	boolean http2;
+	int maxIdleConnections;
+	long keepAlive;
+	int maxRequestsPerHost;
+	long connectTimeout;
+	long readTimeout;
+	long writeTimeout;
+	long callTimeout;
+
+	static HttpProfile of(@NonNull ApiConfig config)
+	{
+		return new HttpProfile(
+			!config.isDisableHttp2(),
+			config.getMaxIdleConnections(),
+			config.getKeepAlive(),
+			config.getMaxRequestsPerHost(),
+			config.getConnectTimeout(),
+			config.getReadTimeout(),
+			config.getWriteTimeout(),
+			config.getCallTimeout());
+	}
+
+	/**
+	 * @param dispatcher Dispatcher of the API client, kept across profiles so requests in flight stay counted.
+	 * @param previous   Client this one replaces, its idle connections are closed. Calls in flight keep theirs.
+	 */
+	OkHttpClient apply(@NonNull OkHttpClient base, @NonNull Dispatcher dispatcher, @Nullable OkHttpClient previous)
+	{
+		dispatcher.setMaxRequestsPerHost(this.maxRequestsPerHost);
+		if (previous != null)
+		{
+			previous.connectionPool().evictAll();
+		}
+		return base.newBuilder()
+			.dispatcher(dispatcher)
+			.connectionPool(new ConnectionPool(this.maxIdleConnections, this.keepAlive, TimeUnit.MILLISECONDS))
+			.protocols(this.http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+			.connectTimeout(this.connectTimeout, TimeUnit.MILLISECONDS)
+			.readTimeout(this.readTimeout, TimeUnit.MILLISECONDS)
+			.writeTimeout(this.writeTimeout, TimeUnit.MILLISECONDS)
+			.callTimeout(this.callTimeout, TimeUnit.MILLISECONDS)
+			.build();
+	}
+}
@@ -0,0 +1,83 @@
+package com.ironclad.clangoals.components.service.api;
+
+import com.ironclad.clangoals.components.service.config.dto.ApiConfig;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Supplier;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Token bucket shared by every request to the API.
+ * <p>
+ * The bucket holds up to the remote burst and refills at the remote rate per minute, each request takes its endpoints weight.
+ * Reservations are never refused, a request that finds too few tokens takes them on credit and waits until they are repaid,
+ * so requests are sent in the order they reserved.
+ * The server can stop all requests for a while, with Retry-After or by reporting its budget as spent.
+ */
+@RequiredArgsConstructor
+class RateLimiter
+{
+	static final long MAX_PAUSE = Duration.of(10, ChronoUnit.MINUTES).toMillis();
+	private static final double MS_PER_MINUTE = Duration.of(1, ChronoUnit.MINUTES).toMillis();
+
+	@NonNull
+	private final Supplier<ApiConfig> config;
+	/**
+	 * Negative while reservations are waiting.
+	 */
+	private double tokens = Double.NaN;
+	private long refilledAt;
+	private long pausedUntil;
+
+	/**
+	 * Take the tokens for a request.
+	 *
+	 * @return MS to wait before sending it, 0 to send now.
+	 */
+	synchronized long reserve(@NonNull String endpoint, long now)
+	{
+		ApiConfig config = this.config.get();
+		refill(config, now);
+		this.tokens -= config.getRateWeight(endpoint);
+		long debt = this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens * MS_PER_MINUTE / config.getRateLimit());
+		return Math.max(debt, this.pausedUntil - now);
+	}
+
+	/**
+	 * Send nothing until {@code until}, capped at {@value #MAX_PAUSE}ms from now.
+	 */
+	synchronized void pause(long until, long now)
+	{
+		this.pausedUntil = Math.max(this.pausedUntil, Math.min(until, now + MAX_PAUSE));
+	}
+
+	/**
+	 * Apply the budget the server reported, tokens are never raised above what it allows.
+	 *
+	 * @param reset MS until the servers budget is restored.
+	 */
+	synchronized void budget(long remaining, long reset, long now)
+	{
+		refill(this.config.get(), now);
+		this.tokens = Math.min(this.tokens, remaining);
+		if (remaining <= 0)
+		{
+			pause(now + reset, now);
+		}
+	}
+
+	private void refill(ApiConfig config, long now)
+	{
+		int burst = config.getRateBurst();
+		if (Double.isNaN(this.tokens))
+		{
+			this.tokens = burst;
+		}
+		else if (now > this.refilledAt)
+		{
+			this.tokens = Math.min(burst, this.tokens + (now - this.refilledAt) * config.getRateLimit() / MS_PER_MINUTE);
+		}
+		this.refilledAt = Math.max(this.refilledAt, now);
+	}
+}
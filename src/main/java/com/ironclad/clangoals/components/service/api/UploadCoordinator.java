@@ -0,0 +1,127 @@
+package com.ironclad.clangoals.components.service.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Gathers serialized batches from every tracking stream into one combined upload.
+ * <p>
+ * The first batch to arrive opens a short window and asks the registered streams for batches due within it,
+ * whatever arrives before it closes joins the same envelope. Streams keep their own intervals and size limits.
+ */
+@Slf4j
+class UploadCoordinator
+{
+	private final ScheduledExecutorService executor;
+	/**
+	 * Uploads the sections of one envelope, completing with a result per section in the same order.
+	 */
+	private final Function<List<Section>, CompletableFuture<List<UploadResult>>> sender;
+	private final Map<Object, LongConsumer> streams = new ConcurrentHashMap<>();
+	/**
+	 * Sections waiting for the current window to close, guarded by this.
+	 */
+	private List<Section> pending = new ArrayList<>();
+
+	UploadCoordinator(ScheduledExecutorService executor, Function<List<Section>, CompletableFuture<List<UploadResult>>> sender)
+	{
+		this.executor = executor;
+		this.sender = sender;
+	}
+
+	/**
+	 * @param owner Key used to unregister the stream.
+	 * @param flushDue Requests a flush of the streams batch if it is due within the given MS, must not block.
+	 */
+	void register(@NonNull Object owner, @NonNull LongConsumer flushDue)
+	{
+		this.streams.put(owner, flushDue);
+	}
+
+	void unregister(@NonNull Object owner)
+	{
+		this.streams.remove(owner);
+	}
+
+	/**
+	 * Add a batch to the next envelope.
+	 *
+	 * @param account Account the batch was recorded for, sent with it even if the player switched since.
+	 * @param linger MS to wait for other streams before sending.
+	 * @return Completes with the result for this batch.
+	 */
+	CompletableFuture<UploadResult> submit(long account, String endPoint, byte[] payload, long linger)
+	{
+		Section section = new Section(account, endPoint, payload, new CompletableFuture<>());
+		boolean opened;
+		synchronized (this)
+		{
+			opened = this.pending.isEmpty();
+			this.pending.add(section);
+		}
+
+		if (opened)
+		{
+			this.streams.values().forEach(flushDue -> flushDue.accept(linger));
+			this.executor.schedule(this::send, linger, TimeUnit.MILLISECONDS);
+		}
+		return section.getResult();
+	}
+
+	private void send()
+	{
+		List<Section> sections;
+		synchronized (this)
+		{
+			sections = this.pending;
+			this.pending = new ArrayList<>();
+		}
+
+		if (sections.isEmpty())
+		{
+			return;
+		}
+
+		log.debug("Sending {} batches in one envelope", sections.size());
+		CompletableFuture<List<UploadResult>> upload;
+		try
+		{
+			upload = this.sender.apply(sections);
+		}
+		catch (Exception e)
+		{
+			upload = CompletableFuture.failedFuture(e);
+		}
+
+		upload.whenComplete((results, e) -> {
+			if (e != null)
+			{
+				log.warn("Combined upload failed", e);
+			}
+			for (int i = 0; i < sections.size(); i++)
+			{
+				UploadResult result = e == null && results != null && i < results.size() ? results.get(i) : null;
+				sections.get(i).getResult().complete(result == null ? UploadResult.FAILED : result);
+			}
+		});
+	}
+
+	@Value
+	static class Section
+	{
+		long account;
+		String endPoint;
+		byte[] payload;
+		CompletableFuture<UploadResult> result;
+	}
+}
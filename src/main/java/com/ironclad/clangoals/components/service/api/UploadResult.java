@@ -0,0 +1,44 @@
+package com.ironclad.clangoals.components.service.api;
+
+/**
+ * Final outcome of a batch upload, after any retries.
+ */
+public enum UploadResult
+{
+	/**
+	 * The server accepted the batch.
+	 */
+	DELIVERED,
+	/**
+	 * The server refused the batch itself (4xx), sending it again will not help.
+	 */
+	REJECTED,
+	/**
+	 * The batch could not be delivered right now, it may be sent again later.
+	 */
+	FAILED;
+
+	/**
+	 * Classify a response code.
+	 *
+	 * @return null if the request should be retried.
+	 */
+	static UploadResult of(int code)
+	{
+		if (code >= 200 && code < 300)
+		{
+			return DELIVERED;
+		}
+		switch (code)
+		{
+			case 401:
+			case 403:
+				//Key problems, keep the batch until we are authenticated again.
+				return FAILED;
+			case 408:
+			case 429:
+				return null;
+		}
+		return code >= 400 && code < 500 ? REJECTED : null;
+	}
+}
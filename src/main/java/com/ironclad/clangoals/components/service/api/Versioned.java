@@ -0,0 +1,28 @@
+package com.ironclad.clangoals.components.service.api;
+
+import javax.annotation.Nullable;
+import lombok.Value;
+
+/**
+ * A fetched value with the cache validators the server sent for it.
+ * <p>
+ * Passed back with the next request, so an unchanged value is answered with 304 Not Modified and no body.
+ */
+@Value
+public class Versioned<T>
+{
+	/**
+	 * Null when the server replied 304 Not Modified.
+	 */
+	@Nullable
+	T value;
+	@Nullable
+	String etag;
+	@Nullable
+	String lastModified;
+
+	public boolean isModified()
+	{
+		return this.value != null;
+	}
+}
@@ -0,0 +1,258 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import lombok.experimental.UtilityClass;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Serializes batches into request bodies.
+ * <p>
+ * The binary format is:
+ * <pre>
+ * "ICB" version:u8 account:zigzag-varint
+ * [dictionary:zigzag-varint, version 2 and 3] [seq:varint batchId:string, version 3 only]
+ * fieldCount:varint {type:u8 name:string}*
+ * stringCount:varint {string}*
+ * rowCount:varint {value:varint per field}*
+ * </pre>
+ * Strings are a varint byte length followed by UTF-8,
+ * number values are zigzag encoded, string values are 1 + their string table index or 0 for null.
+ * Null values are left out of json rows.
+ */
+@UtilityClass
+public class BatchEncoding
+{
+	public final String JSON_TYPE = "application/json";
+	public final String BINARY_TYPE = "application/x-ironclad-batch";
+	private final ByteString MAGIC = ByteString.encodeUtf8("ICB");
+	private final int BINARY_VERSION = 1;
+	private final int DICTIONARY_VERSION = 2;
+	private final int SEQUENCED_VERSION = 3;
+	/**
+	 * Batch not encoded against a {@link NameDictionary}.
+	 */
+	public final long NO_DICTIONARY = 0;
+
+	/**
+	 * @return {"account_hash": account, "batch": [rows...]} as UTF-8.
+	 */
+	public byte[] json(long account, RecordSource rows) throws IOException
+	{
+		return json(account, NO_DICTIONARY, rows);
+	}
+
+	/**
+	 * @param dictionary {@link NameDictionary} session the rows were encoded against, sent as "name_dictionary".
+	 * @return {"account_hash": account, "name_dictionary": dictionary, "batch": [rows...]} as UTF-8.
+	 */
+	public byte[] json(long account, long dictionary, RecordSource rows) throws IOException
+	{
+		return json(BatchHeader.builder().account(account).dictionary(dictionary).build(), rows);
+	}
+
+	/**
+	 * @return {"account_hash": account, "name_dictionary": dictionary, "batch_id": id, "seq": seq, "batch": [rows...]} as UTF-8,
+	 * without the fields the header does not set.
+	 */
+	public byte[] json(BatchHeader header, RecordSource rows) throws IOException
+	{
+		Buffer buffer = new Buffer();
+		try (JsonWriter json = jsonWriter(buffer))
+		{
+			beginJson(json, header);
+			rows.writeTo(new JsonRecordSink(json));
+			json.endArray().endObject();
+		}
+		return buffer.readByteArray();
+	}
+
+	public byte[] binary(long account, RecordSource rows) throws IOException
+	{
+		return binary(account, NO_DICTIONARY, rows);
+	}
+
+	/**
+	 * @param dictionary {@link NameDictionary} session the rows were encoded against.
+	 */
+	public byte[] binary(long account, long dictionary, RecordSource rows) throws IOException
+	{
+		return binary(BatchHeader.builder().account(account).dictionary(dictionary).build(), rows);
+	}
+
+	public byte[] binary(BatchHeader header, RecordSource rows) throws IOException
+	{
+		BinaryRecordSink sink = new BinaryRecordSink();
+		rows.writeTo(sink);
+
+		boolean sequenced = header.getSeq() != 0;
+		Buffer buffer = new Buffer()
+			.write(MAGIC)
+			.writeByte(sequenced ? SEQUENCED_VERSION : header.getDictionary() != NO_DICTIONARY ? DICTIONARY_VERSION : BINARY_VERSION);
+		BinaryRecordSink.writeVarLong(buffer, BinaryRecordSink.zigzag(header.getAccount()));
+		if (sequenced || header.getDictionary() != NO_DICTIONARY)
+		{
+			BinaryRecordSink.writeVarLong(buffer, BinaryRecordSink.zigzag(header.getDictionary()));
+		}
+		if (sequenced)
+		{
+			BinaryRecordSink.writeVarLong(buffer, header.getSeq());
+			BinaryRecordSink.writeString(buffer, header.getBatchId() == null ? "" : header.getBatchId());
+		}
+		sink.writeTo(buffer);
+		return buffer.readByteArray();
+	}
+
+	/**
+	 * Read the header of a json or binary batch, without decoding its rows.
+	 */
+	public BatchHeader header(byte[] payload) throws IOException
+	{
+		if (isBinary(payload))
+		{
+			return readBinaryHeader(new Buffer().write(payload));
+		}
+
+		BatchHeader.BatchHeaderBuilder header = BatchHeader.builder();
+		try (JsonReader json = new JsonReader(new InputStreamReader(new Buffer().write(payload).inputStream(), StandardCharsets.UTF_8)))
+		{
+			json.beginObject();
+			while (json.hasNext())
+			{
+				switch (json.nextName())
+				{
+					case "account_hash":
+						header.account(json.nextLong());
+						break;
+					case "name_dictionary":
+						header.dictionary(json.nextLong());
+						break;
+					case "seq":
+						header.seq(json.nextLong());
+						break;
+					case "batch_id":
+						header.batchId(json.nextString());
+						break;
+					case "batch":
+						//Header fields are written first
+						return header.build();
+					default:
+						json.skipValue();
+				}
+			}
+		}
+		catch (IllegalStateException e)
+		{
+			throw new IOException("Malformed batch", e);
+		}
+		return header.build();
+	}
+
+	public boolean isBinary(byte[] payload)
+	{
+		return payload.length > MAGIC.size() && ByteString.of(payload, 0, MAGIC.size()).equals(MAGIC);
+	}
+
+	/**
+	 * Re-encode a binary batch as JSON, for servers that stopped accepting the binary format.
+	 */
+	public byte[] binaryToJson(byte[] payload) throws IOException
+	{
+		Buffer in = new Buffer().write(payload);
+		BatchHeader header = readBinaryHeader(in);
+
+		int fieldCount = (int) BinaryRecordSink.readVarLong(in);
+		byte[] types = new byte[fieldCount];
+		String[] fields = new String[fieldCount];
+		for (int i = 0; i < fieldCount; i++)
+		{
+			types[i] = in.readByte();
+			fields[i] = BinaryRecordSink.readString(in);
+		}
+		String[] strings = new String[(int) BinaryRecordSink.readVarLong(in)];
+		for (int i = 0; i < strings.length; i++)
+		{
+			strings[i] = BinaryRecordSink.readString(in);
+		}
+		long rowCount = BinaryRecordSink.readVarLong(in);
+
+		Buffer out = new Buffer();
+		try (JsonWriter json = jsonWriter(out))
+		{
+			beginJson(json, header);
+			for (long row = 0; row < rowCount; row++)
+			{
+				json.beginObject();
+				for (int i = 0; i < fieldCount; i++)
+				{
+					long value = BinaryRecordSink.readVarLong(in);
+					json.name(fields[i]);
+					if (types[i] == BinaryRecordSink.TYPE_STRING)
+					{
+						json.value(value == 0 ? null : strings[(int) value - 1]);
+					}
+					else
+					{
+						json.value(BinaryRecordSink.unzigzag(value));
+					}
+				}
+				json.endObject();
+			}
+			json.endArray().endObject();
+		}
+		return out.readByteArray();
+	}
+
+	private JsonWriter jsonWriter(Buffer buffer)
+	{
+		JsonWriter json = new JsonWriter(new OutputStreamWriter(buffer.outputStream(), StandardCharsets.UTF_8));
+		json.setSerializeNulls(false);
+		return json;
+	}
+
+	private BatchHeader readBinaryHeader(Buffer in) throws IOException
+	{
+		if (!in.readByteString(MAGIC.size()).equals(MAGIC))
+		{
+			throw new IOException("Not a binary batch");
+		}
+		int version = in.readByte();
+		if (version < BINARY_VERSION || version > SEQUENCED_VERSION)
+		{
+			throw new IOException("Unsupported binary batch version " + version);
+		}
+		BatchHeader.BatchHeaderBuilder header = BatchHeader.builder()
+			.account(BinaryRecordSink.unzigzag(BinaryRecordSink.readVarLong(in)));
+		if (version >= DICTIONARY_VERSION)
+		{
+			header.dictionary(BinaryRecordSink.unzigzag(BinaryRecordSink.readVarLong(in)));
+		}
+		if (version == SEQUENCED_VERSION)
+		{
+			header.seq(BinaryRecordSink.readVarLong(in))
+				.batchId(BinaryRecordSink.readString(in));
+		}
+		return header.build();
+	}
+
+	private void beginJson(JsonWriter json, BatchHeader header) throws IOException
+	{
+		json.beginObject()
+			.name("account_hash").value(header.getAccount());
+		if (header.getDictionary() != NO_DICTIONARY)
+		{
+			json.name("name_dictionary").value(header.getDictionary());
+		}
+		if (header.getSeq() != 0)
+		{
+			json.name("batch_id").value(header.getBatchId())
+				.name("seq").value(header.getSeq());
+		}
+		json.name("batch").beginArray();
+	}
+}
@@ -0,0 +1,28 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import javax.annotation.Nullable;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Batch level fields sent ahead of the rows.
+ */
+@Value
+@Builder(toBuilder = true)
+public class BatchHeader
+{
+	long account;
+	/**
+	 * {@link NameDictionary} session the rows were encoded against, {@link BatchEncoding#NO_DICTIONARY} for none.
+	 */
+	long dictionary;
+	/**
+	 * Per account and stream sequence, starting at 1. 0 for a batch without one.
+	 */
+	long seq;
+	/**
+	 * Unique id of the batch, kept by every retry and replay. Null for a batch without one.
+	 */
+	@Nullable
+	String batchId;
+}
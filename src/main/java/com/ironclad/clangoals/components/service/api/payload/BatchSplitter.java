@@ -0,0 +1,222 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Splits batches over a byte budget into runs of whole records.
+ * <p>
+ * Records are sized in one pass and packed greedily, scaled to the real encoding of the whole batch.
+ * Each run is then encoded to check it, runs still over the budget are halved until they fit.
+ * A record over the budget on its own is kept whole.
+ */
+@UtilityClass
+public class BatchSplitter
+{
+	/**
+	 * Encodes a run of records the way it will be sent, with the largest header it may get.
+	 */
+	@FunctionalInterface
+	public interface Encoder
+	{
+		byte[] encode(RecordSource part) throws IOException;
+	}
+
+	/**
+	 * @param budget Maximum bytes of an encoded run.
+	 * @return The runs in order, only {@code rows} if it fits the budget.
+	 */
+	public List<RecordSource> split(RecordSource rows, int budget, Encoder encoder) throws IOException
+	{
+		int whole = encoder.encode(rows).length;
+		if (whole <= budget)
+		{
+			return List.of(rows);
+		}
+
+		SizingSink sizing = new SizingSink();
+		rows.writeTo(sizing);
+		long[] sizes = sizing.finish();
+		if (sizes.length <= 1)
+		{
+			return List.of(rows);
+		}
+
+		int header = encoder.encode(range(rows, 0, 0)).length;
+		double ratio = (double) (whole - header) / Math.max(1, Arrays.stream(sizes).sum());
+		double target = budget - header;
+
+		List<RecordSource> parts = new ArrayList<>();
+		int from = 0;
+		double size = 0;
+		for (int i = 0; i < sizes.length; i++)
+		{
+			double record = sizes[i] * ratio;
+			if (i > from && size + record > target)
+			{
+				fit(rows, from, i, budget, encoder, parts);
+				from = i;
+				size = 0;
+			}
+			size += record;
+		}
+		fit(rows, from, sizes.length, budget, encoder, parts);
+		return parts;
+	}
+
+	/**
+	 * Rows of records {@code from} until {@code to} of a source.
+	 * Rows after the last closed record count as one more record.
+	 */
+	public RecordSource range(RecordSource rows, int from, int to)
+	{
+		return out -> rows.writeTo(new RangeSink(out, from, to));
+	}
+
+	private void fit(RecordSource rows, int from, int to, int budget, Encoder encoder, List<RecordSource> parts) throws IOException
+	{
+		RecordSource part = range(rows, from, to);
+		if (to - from > 1 && encoder.encode(part).length > budget)
+		{
+			int mid = (from + to) >>> 1;
+			fit(rows, from, mid, budget, encoder, parts);
+			fit(rows, mid, to, budget, encoder, parts);
+			return;
+		}
+		parts.add(part);
+	}
+
+	/**
+	 * Approximate json bytes of each record.
+	 */
+	private static class SizingSink implements RecordSink
+	{
+		private long[] sizes = new long[16];
+		private int count;
+		private long current;
+
+		@Override
+		public RecordSink beginRow()
+		{
+			this.current += 3;
+			return this;
+		}
+
+		@Override
+		public RecordSink field(String name, long value)
+		{
+			this.current += name.length() + 4 + Long.toString(value).length();
+			return this;
+		}
+
+		@Override
+		public RecordSink field(String name, String value)
+		{
+			if (value != null)
+			{
+				this.current += name.length() + 6 + value.getBytes(StandardCharsets.UTF_8).length;
+			}
+			return this;
+		}
+
+		@Override
+		public RecordSink endRow()
+		{
+			return this;
+		}
+
+		@Override
+		public RecordSink endRecord()
+		{
+			if (this.count == this.sizes.length)
+			{
+				this.sizes = Arrays.copyOf(this.sizes, this.count * 2);
+			}
+			this.sizes[this.count++] = this.current;
+			this.current = 0;
+			return this;
+		}
+
+		long[] finish()
+		{
+			if (this.current > 0)
+			{
+				endRecord();
+			}
+			return Arrays.copyOf(this.sizes, this.count);
+		}
+	}
+
+	/**
+	 * Forwards the rows of records in a range.
+	 */
+	@RequiredArgsConstructor
+	private static class RangeSink implements RecordSink
+	{
+		private final RecordSink out;
+		private final int from;
+		private final int to;
+		private int record;
+
+		private boolean inRange()
+		{
+			return this.record >= this.from && this.record < this.to;
+		}
+
+		@Override
+		public RecordSink beginRow() throws IOException
+		{
+			if (inRange())
+			{
+				this.out.beginRow();
+			}
+			return this;
+		}
+
+		@Override
+		public RecordSink field(String name, long value) throws IOException
+		{
+			if (inRange())
+			{
+				this.out.field(name, value);
+			}
+			return this;
+		}
+
+		@Override
+		public RecordSink field(String name, String value) throws IOException
+		{
+			if (inRange())
+			{
+				this.out.field(name, value);
+			}
+			return this;
+		}
+
+		@Override
+		public RecordSink endRow() throws IOException
+		{
+			if (inRange())
+			{
+				this.out.endRow();
+			}
+			return this;
+		}
+
+		@Override
+		public RecordSink endRecord() throws IOException
+		{
+			if (inRange())
+			{
+				this.out.endRecord();
+			}
+			this.record++;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Writes rows in the compact binary batch format.
+ * <p>
+ * The field layout is taken from the first row, every following row must match it.
+ * Numbers are zigzag varints, strings are varint references into a table of distinct values written once.
+ *
+ * @see BatchEncoding#binary
+ */
+public class BinaryRecordSink implements RecordSink
+{
+	static final byte TYPE_NUMBER = 0;
+	static final byte TYPE_STRING = 1;
+
+	private final List<String> fields = new ArrayList<>();
+	private final List<Byte> types = new ArrayList<>();
+	private final Map<String, Integer> index = new HashMap<>();
+	private final List<String> strings = new ArrayList<>();
+	private final Buffer rows = new Buffer();
+	private boolean layoutFixed;
+	private int column;
+	private int rowCount;
+
+	@Override
+	public RecordSink beginRow()
+	{
+		this.column = 0;
+		return this;
+	}
+
+	@Override
+	public RecordSink field(String name, long value) throws IOException
+	{
+		column(name, TYPE_NUMBER);
+		writeVarLong(this.rows, zigzag(value));
+		return this;
+	}
+
+	@Override
+	public RecordSink field(String name, String value) throws IOException
+	{
+		column(name, TYPE_STRING);
+		writeVarLong(this.rows, value == null ? 0 : ref(value) + 1);
+		return this;
+	}
+
+	@Override
+	public RecordSink endRow() throws IOException
+	{
+		if (this.layoutFixed && this.column != this.fields.size())
+		{
+			throw new IOException("Row has " + this.column + " fields, expected " + this.fields.size());
+		}
+		this.layoutFixed = true;
+		this.rowCount++;
+		return this;
+	}
+
+	/**
+	 * Write the field layout, string table and rows.
+	 */
+	void writeTo(BufferedSink out) throws IOException
+	{
+		writeVarLong(out, this.fields.size());
+		for (int i = 0; i < this.fields.size(); i++)
+		{
+			out.writeByte(this.types.get(i));
+			writeString(out, this.fields.get(i));
+		}
+		writeVarLong(out, this.strings.size());
+		for (String s : this.strings)
+		{
+			writeString(out, s);
+		}
+		writeVarLong(out, this.rowCount);
+		out.writeAll(this.rows);
+	}
+
+	private void column(String name, byte type) throws IOException
+	{
+		if (!this.layoutFixed)
+		{
+			this.fields.add(name);
+			this.types.add(type);
+		}
+		else if (this.column >= this.fields.size() || !this.fields.get(this.column).equals(name) || this.types.get(this.column) != type)
+		{
+			throw new IOException("Field " + name + " does not match the batch layout");
+		}
+		this.column++;
+	}
+
+	private int ref(String value)
+	{
+		Integer ref = this.index.get(value);
+		if (ref == null)
+		{
+			ref = this.strings.size();
+			this.strings.add(value);
+			this.index.put(value, ref);
+		}
+		return ref;
+	}
+
+	static long zigzag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static void writeVarLong(BufferedSink out, long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(BufferedSource in) throws IOException
+	{
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new EOFException("Malformed varint");
+	}
+
+	static void writeString(BufferedSink out, String value) throws IOException
+	{
+		ByteString bytes = ByteString.encodeUtf8(value);
+		writeVarLong(out, bytes.size());
+		out.write(bytes);
+	}
+
+	static String readString(BufferedSource in) throws IOException
+	{
+		return in.readUtf8(readVarLong(in));
+	}
+}
@@ -0,0 +1,22 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import java.io.IOException;
+import lombok.experimental.UtilityClass;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+@UtilityClass
+public class Gzip
+{
+	public byte[] compress(byte[] data) throws IOException
+	{
+		Buffer out = new Buffer();
+		try (BufferedSink sink = Okio.buffer(new GzipSink(out)))
+		{
+			sink.write(data);
+		}
+		return out.readByteArray();
+	}
+}
@@ -0,0 +1,44 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Writes rows as JSON objects.
+ */
+@RequiredArgsConstructor
+public class JsonRecordSink implements RecordSink
+{
+	@NonNull
+	private final JsonWriter writer;
+
+	@Override
+	public RecordSink beginRow() throws IOException
+	{
+		this.writer.beginObject();
+		return this;
+	}
+
+	@Override
+	public RecordSink field(String name, long value) throws IOException
+	{
+		this.writer.name(name).value(value);
+		return this;
+	}
+
+	@Override
+	public RecordSink field(String name, String value) throws IOException
+	{
+		this.writer.name(name).value(value);
+		return this;
+	}
+
+	@Override
+	public RecordSink endRow() throws IOException
+	{
+		this.writer.endObject();
+		return this;
+	}
+}
@@ -0,0 +1,178 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Session scoped dictionary for the name field of a streams rows.
+ * <p>
+ * A name is sent with a numeric reference in {@value #REF_FIELD}, later rows send only the reference.
+ * Names are defined again in every batch until a batch defining them is delivered,
+ * so a lost or delayed batch never leaves the server holding a reference it has not seen.
+ * Batches carry the session they were encoded against, {@link #reset()} starts a new one.
+ */
+public class NameDictionary
+{
+	public static final String FIELD = "name";
+	public static final String REF_FIELD = "name_ref";
+
+	private final Map<String, Integer> refs = new HashMap<>();
+	/**
+	 * References the server has received in a delivered batch of this session.
+	 */
+	private final BitSet delivered = new BitSet();
+	private long session = newSession();
+
+	/**
+	 * Forget every name, later batches define their names again under a new session.
+	 */
+	public synchronized void reset()
+	{
+		this.refs.clear();
+		this.delivered.clear();
+		this.session = newSession();
+	}
+
+	/**
+	 * Start encoding a batch against the current session.
+	 */
+	public synchronized Batch begin()
+	{
+		return new Batch(this.session);
+	}
+
+	/**
+	 * Rows with the name field left out, for servers that resolve names from ids.
+	 */
+	public static RecordSource omit(@NonNull RecordSource rows)
+	{
+		return out -> rows.writeTo(new ForwardingSink(out)
+		{
+			@Override
+			public RecordSink field(String name, String value) throws IOException
+			{
+				return FIELD.equals(name) ? this : super.field(name, value);
+			}
+		});
+	}
+
+	private static long newSession()
+	{
+		long session;
+		do
+		{
+			session = ThreadLocalRandom.current().nextLong();
+		}
+		while (session == BatchEncoding.NO_DICTIONARY);
+		return session;
+	}
+
+	/**
+	 * One batch encoded against the dictionary.
+	 */
+	@RequiredArgsConstructor
+	public class Batch
+	{
+		@Getter
+		private final long session;
+		/**
+		 * References sent in full by this batch.
+		 */
+		private final BitSet defined = new BitSet();
+
+		/**
+		 * Rows with each name replaced by its reference, defining names the server may not know yet.
+		 * Null names are sent as reference 0.
+		 */
+		public RecordSource wrap(@NonNull RecordSource rows)
+		{
+			return out -> {
+				synchronized (NameDictionary.this)
+				{
+					// Reset since begin, nothing delivered counts for this batches session
+					boolean current = this.session == NameDictionary.this.session;
+					rows.writeTo(new ForwardingSink(out)
+					{
+						@Override
+						public RecordSink field(String name, String value) throws IOException
+						{
+							if (!FIELD.equals(name))
+							{
+								return super.field(name, value);
+							}
+							int ref = value == null ? 0 : NameDictionary.this.refs.computeIfAbsent(value, k -> NameDictionary.this.refs.size() + 1);
+							boolean known = ref == 0 || Batch.this.defined.get(ref) || current && NameDictionary.this.delivered.get(ref);
+							if (!known)
+							{
+								Batch.this.defined.set(ref);
+							}
+							super.field(FIELD, known ? null : value);
+							return super.field(REF_FIELD, ref);
+						}
+					});
+				}
+			};
+		}
+
+		/**
+		 * Mark the names this batch defined as known to the server, call once it is delivered.
+		 */
+		public void delivered()
+		{
+			synchronized (NameDictionary.this)
+			{
+				if (this.session == NameDictionary.this.session)
+				{
+					NameDictionary.this.delivered.or(this.defined);
+				}
+			}
+		}
+	}
+
+	@RequiredArgsConstructor
+	private static class ForwardingSink implements RecordSink
+	{
+		private final RecordSink out;
+
+		@Override
+		public RecordSink beginRow() throws IOException
+		{
+			this.out.beginRow();
+			return this;
+		}
+
+		@Override
+		public RecordSink field(String name, long value) throws IOException
+		{
+			this.out.field(name, value);
+			return this;
+		}
+
+		@Override
+		public RecordSink field(String name, String value) throws IOException
+		{
+			this.out.field(name, value);
+			return this;
+		}
+
+		@Override
+		public RecordSink endRow() throws IOException
+		{
+			this.out.endRow();
+			return this;
+		}
+
+		@Override
+		public RecordSink endRecord() throws IOException
+		{
+			this.out.endRecord();
+			return this;
+		}
+	}
+}
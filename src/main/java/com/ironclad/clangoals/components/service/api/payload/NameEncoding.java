@@ -0,0 +1,20 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+/**
+ * How the name field of batch rows is sent.
+ */
+public enum NameEncoding
+{
+	/**
+	 * Every row carries its name.
+	 */
+	FULL,
+	/**
+	 * Names are sent once per session with a reference, see {@link NameDictionary}.
+	 */
+	DICTIONARY,
+	/**
+	 * Names are left out, the server resolves them from the ids.
+	 */
+	OMIT
+}
@@ -0,0 +1,31 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a batch as they are serialized, without building an intermediate tree.
+ * <p>
+ * Every row of a stream should write the same fields in the same order.
+ * Rows may be grouped into logical records with {@link #endRecord()}, a record is never split across requests.
+ */
+public interface RecordSink
+{
+	RecordSink beginRow() throws IOException;
+
+	RecordSink field(String name, long value) throws IOException;
+
+	/**
+	 * @param value May be null.
+	 */
+	RecordSink field(String name, String value) throws IOException;
+
+	RecordSink endRow() throws IOException;
+
+	/**
+	 * Close the logical record made of the rows written since the previous one.
+	 */
+	default RecordSink endRecord() throws IOException
+	{
+		return this;
+	}
+}
@@ -0,0 +1,26 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes every row of a batch.
+ * <p>
+ * A source may be written more than once, every pass must write the same rows.
+ */
+@FunctionalInterface
+public interface RecordSource
+{
+	void writeTo(RecordSink out) throws IOException;
+
+	static <T> RecordSource of(List<T> batch, RecordWriter<? super T> writer)
+	{
+		return out -> {
+			for (T item : batch)
+			{
+				writer.write(item, out);
+				out.endRecord();
+			}
+		};
+	}
+}
@@ -0,0 +1,14 @@
+package com.ironclad.clangoals.components.service.api.payload;
+
+import java.io.IOException;
+
+/**
+ * Writes one queued record as zero or more rows of a batch.
+ *
+ * @param <T> Type of the queued records
+ */
+@FunctionalInterface
+public interface RecordWriter<T>
+{
+	void write(T record, RecordSink out) throws IOException;
+}
@@ -0,0 +1,223 @@
+package com.ironclad.clangoals.components.service.api.spool;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Durable, ordered store of serialized batches for a single endpoint.
+ * <p>
+ * Batches are appended to memory-mapped segment files before they are sent,
+ * and stay pending until the server acknowledges them.
+ * The highest sequence below which everything has been acknowledged is kept in a separate mapped file,
+ * segments entirely below it are deleted. Records acknowledged out of order are marked in place.
+ */
+@Slf4j
+public final class BatchSpool
+{
+	static final int SEGMENT_SIZE = 256 * 1024;
+	private static final String ACK_FILE = "ack";
+
+	private final Path dir;
+	private final List<SpoolSegment> segments = new ArrayList<>();
+	private final List<SpoolSegment> undeleted = new ArrayList<>();
+	private final NavigableMap<Long, Location> pending = new TreeMap<>();
+	private final Set<Long> inFlight = new HashSet<>();
+	private FileChannel ackChannel;
+	private MappedByteBuffer ackBuffer;
+	private long acked;
+	private long nextSeq;
+
+	private BatchSpool(Path dir)
+	{
+		this.dir = dir;
+	}
+
+	/**
+	 * Open, or create, the spool stored in the directory.
+	 * Any batches left unacknowledged by a previous session are pending replay.
+	 */
+	public static BatchSpool open(Path dir) throws IOException
+	{
+		Files.createDirectories(dir);
+		BatchSpool spool = new BatchSpool(dir);
+		spool.ackChannel = FileChannel.open(dir.resolve(ACK_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		spool.ackBuffer = spool.ackChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+		spool.acked = spool.ackBuffer.getLong(0);
+		spool.nextSeq = spool.acked + 1;
+
+		List<Path> files;
+		try (Stream<Path> list = Files.list(dir))
+		{
+			files = list
+				.filter(p -> p.getFileName().toString().endsWith(SpoolSegment.SUFFIX))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+
+		for (Path file : files)
+		{
+			SpoolSegment segment = SpoolSegment.open(file);
+			if (segment == null)
+			{
+				log.warn("Ignoring unreadable spool segment {}", file);
+				//Keep new segments clear of its name, e.g. one torn while being created
+				spool.nextSeq = Math.max(spool.nextSeq, SpoolSegment.firstSeq(file) + 1);
+				continue;
+			}
+			segment.scan((seq, position) -> {
+				if (seq > spool.acked)
+				{
+					spool.pending.put(seq, new Location(segment, position));
+				}
+			});
+			spool.nextSeq = Math.max(spool.nextSeq, segment.getLastSeq() + 1);
+			spool.segments.add(segment);
+		}
+
+		spool.compact();
+		if (!spool.pending.isEmpty())
+		{
+			log.debug("Opened spool {} with {} pending batches", dir, spool.pending.size());
+		}
+		return spool;
+	}
+
+	/**
+	 * Persist a batch, the returned entry is considered in flight until
+	 * it is either {@link #ack acknowledged} or {@link #release released}.
+	 */
+	public synchronized SpoolEntry append(byte[] payload) throws IOException
+	{
+		long seq = this.nextSeq;
+		SpoolSegment active = this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+		int position = active == null ? -1 : active.position();
+
+		if (active == null || !active.append(seq, payload))
+		{
+			active = SpoolSegment.create(this.dir, seq, Math.max(SEGMENT_SIZE, SpoolSegment.RECORD_HEADER + payload.length));
+			this.segments.add(active);
+			position = active.position();
+			active.append(seq, payload);
+		}
+
+		this.nextSeq++;
+		this.pending.put(seq, new Location(active, position));
+		this.inFlight.add(seq);
+		return new SpoolEntry(seq, payload);
+	}
+
+	/**
+	 * The server accepted the batch, it will not be replayed.
+	 */
+	public synchronized void ack(long seq)
+	{
+		this.inFlight.remove(seq);
+		Location location = this.pending.remove(seq);
+		if (location == null)
+		{
+			return;
+		}
+		location.getSegment().markAcked(location.getPosition());
+
+		long highWater = this.pending.isEmpty() ? this.nextSeq - 1 : this.pending.firstKey() - 1;
+		if (highWater > this.acked)
+		{
+			this.acked = highWater;
+			this.ackBuffer.putLong(0, highWater);
+			compact();
+		}
+	}
+
+	/**
+	 * Sending the batch failed, make it available for replay.
+	 */
+	public synchronized void release(long seq)
+	{
+		this.inFlight.remove(seq);
+	}
+
+	/**
+	 * Take the oldest pending batch which is not already in flight.
+	 *
+	 * @return null if there is nothing to replay.
+	 */
+	public synchronized SpoolEntry next()
+	{
+		for (Map.Entry<Long, Location> e : this.pending.entrySet())
+		{
+			if (this.inFlight.add(e.getKey()))
+			{
+				Location location = e.getValue();
+				return new SpoolEntry(e.getKey(), location.getSegment().read(location.getPosition()));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Number of batches not yet acknowledged.
+	 */
+	public synchronized int size()
+	{
+		return this.pending.size();
+	}
+
+	public synchronized void close()
+	{
+		this.segments.forEach(SpoolSegment::close);
+		this.segments.clear();
+		this.pending.clear();
+		this.inFlight.clear();
+		try
+		{
+			this.ackBuffer.force();
+			this.ackChannel.close();
+		}
+		catch (IOException e)
+		{
+			log.debug("Error closing spool {}", this.dir, e);
+		}
+	}
+
+	/**
+	 * Delete every segment, other than the one being appended to, whose records have all been acknowledged.
+	 */
+	private void compact()
+	{
+		Iterator<SpoolSegment> it = this.segments.iterator();
+		while (it.hasNext())
+		{
+			SpoolSegment segment = it.next();
+			if (this.segments.size() == 1 || segment.getLastSeq() > this.acked)
+			{
+				break;
+			}
+			it.remove();
+			this.undeleted.add(segment);
+		}
+		this.undeleted.removeIf(SpoolSegment::delete);
+	}
+
+	@Value
+	private static class Location
+	{
+		SpoolSegment segment;
+		int position;
+	}
+}
@@ -0,0 +1,18 @@
+package com.ironclad.clangoals.components.service.api.spool;
+
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * A serialized batch held by a {@link BatchSpool}.
+ */
+@Value
+public class SpoolEntry
+{
+	/**
+	 * Position of the batch in its spool, increases by one per batch.
+	 */
+	long seq;
+	@NonNull
+	byte[] payload;
+}
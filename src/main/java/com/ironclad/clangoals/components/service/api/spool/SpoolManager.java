@@ -0,0 +1,134 @@
+package com.ironclad.clangoals.components.service.api.spool;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Owns one {@link BatchSpool} per account and endpoint,
+ * stored under {@code <spool.dir>/<account hash>/<endpoint>}.
+ */
+@Slf4j
+@Singleton
+public class SpoolManager
+{
+	private final Path root;
+	private final Map<String, BatchSpool> spools = new ConcurrentHashMap<>();
+	/**
+	 * Accounts whose spool directory has been listed, every spool of theirs is open since.
+	 */
+	private final Set<Long> scanned = ConcurrentHashMap.newKeySet();
+	/**
+	 * Set by {@link #close()}, spools are not reopened until {@link #open()} so late uploads can't leave them mapped.
+	 * Guarded by this.
+	 */
+	private boolean closed;
+
+	@Inject
+	public SpoolManager(@Named("spool.dir") File root)
+	{
+		this.root = root.toPath();
+	}
+
+	/**
+	 * @return null if the spool could not be opened or the manager is closed, batches will not be persisted.
+	 */
+	@Nullable
+	public synchronized BatchSpool get(long accountHash, String endpoint)
+	{
+		if (this.closed)
+		{
+			return null;
+		}
+		return this.spools.computeIfAbsent(accountHash + "/" + endpoint, key -> {
+			Path dir = this.root.resolve(String.valueOf(accountHash)).resolve(endpoint);
+			try
+			{
+				return BatchSpool.open(dir);
+			}
+			catch (IOException e)
+			{
+				log.warn("Unable to open batch spool {}", dir, e);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * @return Endpoints of the account with batches not yet acknowledged.
+	 * The disk is only listed the first time for each account, to open the spools of earlier sessions.
+	 */
+	public synchronized List<String> pending(long accountHash)
+	{
+		if (this.closed)
+		{
+			return List.of();
+		}
+		if (this.scanned.add(accountHash))
+		{
+			endpoints(accountHash).forEach(endpoint -> get(accountHash, endpoint));
+		}
+		String prefix = accountHash + "/";
+		return this.spools.entrySet().stream()
+			.filter(e -> e.getKey().startsWith(prefix) && e.getValue().size() > 0)
+			.map(e -> e.getKey().substring(prefix.length()))
+			.sorted()
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return Endpoints with a spool on disk for the account.
+	 */
+	private List<String> endpoints(long accountHash)
+	{
+		Path dir = this.root.resolve(String.valueOf(accountHash));
+		if (!Files.isDirectory(dir))
+		{
+			return List.of();
+		}
+		try (Stream<Path> list = Files.list(dir))
+		{
+			return list
+				.filter(Files::isDirectory)
+				.map(p -> p.getFileName().toString())
+				.sorted()
+				.collect(Collectors.toList());
+		}
+		catch (IOException e)
+		{
+			log.debug("Unable to list spools for {}", accountHash, e);
+			return List.of();
+		}
+	}
+
+	/**
+	 * Allow spools to be opened again after {@link #close()}.
+	 */
+	public synchronized void open()
+	{
+		this.closed = false;
+	}
+
+	/**
+	 * Flush and close every open spool, none are opened again until {@link #open()}.
+	 */
+	public synchronized void close()
+	{
+		this.closed = true;
+		this.spools.values().forEach(BatchSpool::close);
+		this.spools.clear();
+		this.scanned.clear();
+	}
+}
@@ -0,0 +1,212 @@
+package com.ironclad.clangoals.components.service.api.spool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only, memory-mapped spool file.
+ * <p>
+ * Layout: {@code [magic:int][version:int]} followed by records of
+ * {@code [length:int][seq:long][payload:length]}.
+ * The length is written last, so a zero length marks the end of the committed records.
+ * Acknowledged records have their length negated in place.
+ */
+@Slf4j
+final class SpoolSegment
+{
+	static final String SUFFIX = ".seg";
+	private static final int MAGIC = 0x49435350;
+	private static final int VERSION = 1;
+	private static final int HEADER = Integer.BYTES * 2;
+	static final int RECORD_HEADER = Integer.BYTES + Long.BYTES;
+
+	@Getter
+	private final Path path;
+	/**
+	 * Sequence of the first record, also used as the file name.
+	 */
+	@Getter
+	private final long firstSeq;
+	@Getter
+	private long lastSeq;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+
+	private SpoolSegment(Path path, long firstSeq, FileChannel channel, MappedByteBuffer buffer)
+	{
+		this.path = path;
+		this.firstSeq = firstSeq;
+		this.lastSeq = firstSeq - 1;
+		this.channel = channel;
+		this.buffer = buffer;
+	}
+
+	static SpoolSegment create(Path dir, long firstSeq, int size) throws IOException
+	{
+		Path path = dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		return new SpoolSegment(path, firstSeq, channel, buffer);
+	}
+
+	/**
+	 * Map an existing segment, {@link #scan} must be called before appending.
+	 *
+	 * @return null if the file is not a spool segment.
+	 */
+	static SpoolSegment open(Path path) throws IOException
+	{
+		long firstSeq = firstSeq(path);
+		if (firstSeq < 0)
+		{
+			return null;
+		}
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+		if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+		{
+			channel.close();
+			return null;
+		}
+
+		return new SpoolSegment(path, firstSeq, channel, buffer);
+	}
+
+	/**
+	 * @return Sequence of the first record from the file name, -1 if it is not a segment name.
+	 */
+	static long firstSeq(Path path)
+	{
+		String name = path.getFileName().toString();
+		try
+		{
+			return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+		}
+		catch (NumberFormatException | IndexOutOfBoundsException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Report the sequence and position of every committed, unacknowledged record,
+	 * leaving the segment positioned to append after the last one.
+	 */
+	void scan(BiConsumer<Long, Integer> onRecord)
+	{
+		this.buffer.position(HEADER);
+		while (this.buffer.remaining() >= RECORD_HEADER)
+		{
+			int position = this.buffer.position();
+			int length = this.buffer.getInt(position);
+			if (length == 0 || Math.abs(length) > this.buffer.remaining() - RECORD_HEADER)
+			{
+				break;
+			}
+			long seq = this.buffer.getLong(position + Integer.BYTES);
+			this.lastSeq = seq;
+			if (length > 0)
+			{
+				onRecord.accept(seq, position);
+			}
+			this.buffer.position(position + RECORD_HEADER + Math.abs(length));
+		}
+	}
+
+	/**
+	 * @return false if the record does not fit in the remaining space.
+	 */
+	boolean append(long seq, byte[] payload)
+	{
+		if (this.buffer.remaining() < RECORD_HEADER + payload.length)
+		{
+			return false;
+		}
+		int position = this.buffer.position();
+		this.buffer.putLong(position + Integer.BYTES, seq);
+		this.buffer.position(position + RECORD_HEADER);
+		this.buffer.put(payload);
+		//Commit
+		this.buffer.putInt(position, payload.length);
+		this.lastSeq = seq;
+		return true;
+	}
+
+	/**
+	 * @return Position the next record will be written to.
+	 */
+	int position()
+	{
+		return this.buffer.position();
+	}
+
+	void markAcked(int position)
+	{
+		int length = this.buffer.getInt(position);
+		if (length > 0)
+		{
+			this.buffer.putInt(position, -length);
+		}
+	}
+
+	byte[] read(int position)
+	{
+		ByteBuffer view = this.buffer.duplicate();
+		byte[] payload = new byte[view.getInt(position)];
+		view.position(position + RECORD_HEADER);
+		view.get(payload);
+		return payload;
+	}
+
+	void close()
+	{
+		if (this.channel == null)
+		{
+			return;
+		}
+		try
+		{
+			this.buffer.force();
+			this.channel.close();
+		}
+		catch (IOException e)
+		{
+			log.debug("Error closing spool segment {}", this.path, e);
+		}
+		this.channel = null;
+		this.buffer = null;
+	}
+
+	/**
+	 * Close and delete the segment.
+	 * A mapped file can't always be deleted straight away, e.g. on Windows,
+	 * in which case the caller should retry later.
+	 *
+	 * @return true if the file is gone.
+	 */
+	boolean delete()
+	{
+		close();
+		try
+		{
+			Files.deleteIfExists(this.path);
+			return true;
+		}
+		catch (IOException e)
+		{
+			log.debug("Unable to delete spool segment {}, will retry", this.path);
+			return false;
+		}
+	}
+}
@@ -1,21 +1,25 @@
 package com.ironclad.clangoals.components.service.config;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.ironclad.clangoals.IroncladClanGoalsConfig;
 import com.ironclad.clangoals.components.service.api.ApiService;
+import com.ironclad.clangoals.components.service.api.Versioned;
+import com.ironclad.clangoals.components.service.config.dto.ApiConfig;
 import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
 import com.ironclad.clangoals.components.tracking.loot.ItemTrackingConfig;
 import com.ironclad.clangoals.components.tracking.npcs.NPCTrackingConfig;
 import com.ironclad.clangoals.components.tracking.xp.XpTrackingConfig;
 import com.ironclad.clangoals.util.Environment;
+import com.ironclad.clangoals.util.IronClad;
 import com.ironclad.clangoals.util.WorldUtils;
-import com.ironclad.clangoals.util.predicate.ConfigValidator;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.concurrent.CompletionException;
 import javax.inject.Named;
 import joptsimple.internal.Strings;
 import lombok.NonNull;
@@ -26,8 +30,7 @@ import net.runelite.client.eventbus.EventBus;
 @Singleton
 public final class RemoteConfigLoader
 {
-	public static final RemoteConfig EMPTY_CONFIG = new RemoteConfig(Instant.EPOCH, 10, true, WorldUtils.DISABLED_WORLDS ,XpTrackingConfig.getEmpty(), ItemTrackingConfig.getEmpty(), NPCTrackingConfig.getEmpty());
-	private static final ConfigValidator CONFIG_VALIDATOR = new ConfigValidator();
+	public static final RemoteConfig EMPTY_CONFIG = new RemoteConfig(Instant.EPOCH, 10, true, WorldUtils.DISABLED_WORLDS ,XpTrackingConfig.getEmpty(), ItemTrackingConfig.getEmpty(), NPCTrackingConfig.getEmpty(), ApiConfig.getEmpty());
 
 	private final ApiService api;
 	private final EventBus eventBus;
@@ -35,11 +38,16 @@ public final class RemoteConfigLoader
 	private final IroncladClanGoalsConfig pluginConfig;
 	private final RemoteConfig managedConfig;
 	private final boolean developerMode;
+	/**
+	 * Validators of the managed config and the API key it was fetched with.
+	 */
+	private volatile Versioned<?> validators;
+	private volatile String validatorsKey;
 
 	@Inject
 	public RemoteConfigLoader(ApiService api,
 							  EventBus eventBus,
-							  Gson gson,
+							  @IronClad Gson gson,
 							  IroncladClanGoalsConfig pluginConfig,
 							  @Named("developerMode") boolean developerMode
 	)
@@ -56,7 +64,10 @@ public final class RemoteConfigLoader
 			.xpTrackingConfig(XpTrackingConfig.DEFAULT)
 			.itemTrackingConfig(ItemTrackingConfig.DEFAULT)
 			.npcTrackingConfig(NPCTrackingConfig.DEFAULT)
+			.apiConfig(ApiConfig.getEmpty())
 			.build();
+		//ApiService is needed to fetch the remote config, so it can't be injected with it.
+		this.api.setConfig(this.managedConfig.getApiConfig());
 		this.fetchConfiguration();
 	}
 
@@ -81,6 +92,11 @@ public final class RemoteConfigLoader
 				{
 					throw new RuntimeException("failed to load override remote config", e);
 				}
+				catch (JsonParseException e)
+				{
+					revert("Invalid local configuration: " + e.getMessage());
+					return;
+				}
 			}
 		}
 
@@ -90,21 +106,40 @@ public final class RemoteConfigLoader
 			return;
 		}
 
-		this.api.getPluginConfiguration(this.pluginConfig.apiKey()).thenAccept(config -> {
-			if (config != null && CONFIG_VALIDATOR.test(config))
+		String apiKey = this.pluginConfig.apiKey();
+		Versioned<?> cached = apiKey.equals(this.validatorsKey) ? this.validators : null;
+		this.api.getPluginConfiguration(apiKey, cached).thenAccept(fetched -> {
+			if (!fetched.isModified())
+			{
+				log.debug("Configuration not modified");
+				cacheValidators(apiKey, fetched);
+				return;
+			}
+			//Validated while decoding
+			updateConfiguration(fetched.getValue());
+			cacheValidators(apiKey, fetched);
+		}).exceptionally(ex -> {
+			Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+			if (cause instanceof JsonParseException)
 			{
-				updateConfiguration(config);
+				cacheValidators(null, null);
+				revert("Invalid configuration: " + cause.getMessage());
 			}
 			else
 			{
-				revert("Invalid configuration");
+				log.error("Failed to fetch configuration {}", ex.getMessage());
 			}
-		}).exceptionally(ex -> {
-			log.error("Failed to fetch configuration {}", ex.getMessage());
 			return null;
 		});
 	}
 
+	private void cacheValidators(String apiKey, Versioned<?> fetched)
+	{
+		//Only the validators are kept, the config itself lives in the managed config.
+		this.validators = fetched == null ? null : new Versioned<>(null, fetched.getEtag(), fetched.getLastModified());
+		this.validatorsKey = apiKey;
+	}
+
 	private void revert(String reason)
 	{
 		log.debug("Reverting to maintenance mode: {}", reason);
@@ -68,19 +68,29 @@ public class RemoteConfigRefresher implements Component
 
 	private Instant nextRefreshTime()
 	{
-		return Instant.now().plus(this.refreshInterval, ChronoUnit.MINUTES);
+		return Instant.now().plus(Math.max(1, this.refreshInterval), ChronoUnit.MINUTES);
 	}
 
+	/**
+	 * Fetch the config if it is due, then schedule the next check.
+	 * Each check is a one shot task, nothing is scheduled while stopped.
+	 */
 	private void refresh()
 	{
 		this.lock.lock();
 		try
 		{
-			if (Instant.now().isAfter(this.nextRefreshAt))
+			if (this.scheduledFuture == null)
+			{
+				//Stopped while waiting on the lock
+				return;
+			}
+			if (!Instant.now().isBefore(this.nextRefreshAt))
 			{
 				this.executor.submit(this.remoteConfigService::fetchConfiguration);
 				this.nextRefreshAt = nextRefreshTime();
 			}
+			this.scheduledFuture = scheduleRefresh();
 		}
 		finally
 		{
@@ -88,24 +98,44 @@ public class RemoteConfigRefresher implements Component
 		}
 	}
 
+	private ScheduledFuture<?> scheduleRefresh()
+	{
+		long delay = Math.max(0, this.nextRefreshAt.toEpochMilli() - Instant.now().toEpochMilli());
+		return this.executor.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+	}
+
 	private void setSchedule()
 	{
-		if (this.scheduledFuture != null)
+		this.lock.lock();
+		try
 		{
-			return;
+			if (this.scheduledFuture == null)
+			{
+				this.scheduledFuture = scheduleRefresh();
+			}
+		}
+		finally
+		{
+			this.lock.unlock();
 		}
-		long start = Math.max(0, this.nextRefreshAt.toEpochMilli() - Instant.now().toEpochMilli());
-		this.scheduledFuture = this.executor.scheduleWithFixedDelay(this::refresh, start, this.refreshInterval, TimeUnit.MINUTES);
 	}
 
 	private void stopSchedule()
 	{
-		if (this.scheduledFuture == null)
+		this.lock.lock();
+		try
+		{
+			if (this.scheduledFuture == null)
+			{
+				return;
+			}
+			this.scheduledFuture.cancel(false);
+			this.scheduledFuture = null;
+		}
+		finally
 		{
-			return;
+			this.lock.unlock();
 		}
-		this.scheduledFuture.cancel(true);
-		this.scheduledFuture = null;
 	}
 
 	@Subscribe
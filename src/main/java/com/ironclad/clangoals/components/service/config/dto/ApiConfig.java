@@ -0,0 +1,378 @@
+package com.ironclad.clangoals.components.service.config.dto;
+
+import com.google.gson.annotations.SerializedName;
+import com.ironclad.clangoals.components.service.api.payload.NameEncoding;
+import com.ironclad.clangoals.components.service.config.Updatable;
+import com.ironclad.clangoals.util.predicate.NumInRange;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.function.Predicate;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Settings for {@link com.ironclad.clangoals.components.service.api.ApiService}.
+ * <p>
+ * Every value is optional, 0 or missing falls back to the default.
+ */
+@Data
+@Builder
+public class ApiConfig implements Updatable<ApiConfig>
+{
+	static final int DEFAULT_RETRY_ATTEMPTS = 5;
+	static final long DEFAULT_RETRY_BASE_DELAY = Duration.of(1, ChronoUnit.SECONDS).toMillis();
+	static final long DEFAULT_RETRY_MAX_DELAY = Duration.of(1, ChronoUnit.MINUTES).toMillis();
+	static final long DEFAULT_COMBINED_LINGER = 500;
+	static final long DEFAULT_AUTH_TTL = Duration.of(12, ChronoUnit.HOURS).toMillis();
+	static final int DEFAULT_BREAKER_FAILURE_RATE = 50;
+	static final long DEFAULT_BREAKER_SLOW_CALL = Duration.of(10, ChronoUnit.SECONDS).toMillis();
+	static final long DEFAULT_BREAKER_OPEN_TIME = Duration.of(30, ChronoUnit.SECONDS).toMillis();
+	static final int DEFAULT_RATE_LIMIT = 120;
+	static final int DEFAULT_RATE_BURST = 20;
+	static final int DEFAULT_RATE_WEIGHT = 1;
+	static final int DEFAULT_MAX_IDLE_CONNECTIONS = 2;
+	static final long DEFAULT_KEEP_ALIVE = Duration.of(5, ChronoUnit.MINUTES).toMillis();
+	static final int DEFAULT_MAX_REQUESTS_PER_HOST = 4;
+	static final long DEFAULT_CONNECT_TIMEOUT = Duration.of(10, ChronoUnit.SECONDS).toMillis();
+	static final long DEFAULT_READ_TIMEOUT = Duration.of(20, ChronoUnit.SECONDS).toMillis();
+	static final long DEFAULT_WRITE_TIMEOUT = Duration.of(20, ChronoUnit.SECONDS).toMillis();
+	static final long DEFAULT_CALL_TIMEOUT = Duration.of(60, ChronoUnit.SECONDS).toMillis();
+	static final int DEFAULT_MAX_BATCH_BYTES = 256 * 1024;
+
+	/**
+	 * Maximum number of attempts for a batch upload, including the first.
+	 */
+	@SerializedName("retry_attempts")
+	int retryAttempts;
+	/**
+	 * MS to wait before the first retry, doubled for each following one.
+	 */
+	@SerializedName("retry_base_delay")
+	long retryBaseDelay;
+	/**
+	 * MS cap for the delay between retries.
+	 */
+	@SerializedName("retry_max_delay")
+	long retryMaxDelay;
+	/**
+	 * Whether the server accepts every stream in one request to the combined batch endpoint.
+	 */
+	@SerializedName("combined_batch")
+	boolean combinedBatch;
+	/**
+	 * MS to wait for other streams before sending a combined request.
+	 */
+	@SerializedName("combined_linger")
+	long combinedLinger;
+	/**
+	 * Gzip batch bodies of at least this many bytes, 0 to send them uncompressed.
+	 */
+	@SerializedName("gzip_threshold")
+	int gzipThreshold;
+	/**
+	 * Bytes of an uncompressed batch body, larger batches are split into several requests of whole records.
+	 */
+	@SerializedName("max_batch_bytes")
+	int maxBatchBytes;
+	/**
+	 * Whether the server accepts batches in the binary format, json is used otherwise.
+	 */
+	@SerializedName("binary_batches")
+	boolean binaryBatches;
+	/**
+	 * How row names are sent, defaults to {@link NameEncoding#FULL} when not provided.
+	 */
+	@SerializedName("name_encoding")
+	NameEncoding nameEncoding;
+	/**
+	 * MS a successful authentication is trusted without checking again, kept across sessions.
+	 */
+	@SerializedName("auth_ttl")
+	long authTtl;
+	/**
+	 * Percentage of recent batch requests that must fail to stop uploads.
+	 */
+	@SerializedName("breaker_failure_rate")
+	int breakerFailureRate;
+	/**
+	 * MS after which a batch response counts as a failure.
+	 */
+	@SerializedName("breaker_slow_call")
+	long breakerSlowCall;
+	/**
+	 * MS uploads stay stopped before a probe, doubled for each failed probe.
+	 */
+	@SerializedName("breaker_open_time")
+	long breakerOpenTime;
+	/**
+	 * Request weight the client may send per minute, across every endpoint.
+	 */
+	@SerializedName("rate_limit")
+	int rateLimit;
+	/**
+	 * Request weight the client may send at once after being idle.
+	 */
+	@SerializedName("rate_burst")
+	int rateBurst;
+	/**
+	 * Weight of a request per endpoint, batch streams by their name, 1 for endpoints not listed.
+	 */
+	@SerializedName("rate_weights")
+	Map<String, Integer> rateWeights;
+	/**
+	 * Whether to stay on HTTP/1.1, HTTP/2 is preferred when the server offers it otherwise.
+	 */
+	@SerializedName("disable_http2")
+	boolean disableHttp2;
+	/**
+	 * Idle connections kept open to the API.
+	 */
+	@SerializedName("max_idle_connections")
+	int maxIdleConnections;
+	/**
+	 * MS an idle connection is kept open.
+	 */
+	@SerializedName("keep_alive")
+	long keepAlive;
+	/**
+	 * Requests to the API in flight at once, further ones wait in the dispatcher.
+	 */
+	@SerializedName("max_requests_per_host")
+	int maxRequestsPerHost;
+	/**
+	 * MS to establish a connection.
+	 */
+	@SerializedName("connect_timeout")
+	long connectTimeout;
+	/**
+	 * MS to wait for each read of a response.
+	 */
+	@SerializedName("read_timeout")
+	long readTimeout;
+	/**
+	 * MS to wait for each write of a request body.
+	 */
+	@SerializedName("write_timeout")
+	long writeTimeout;
+	/**
+	 * MS a whole call may take, from connecting to reading the response body.
+	 */
+	@SerializedName("call_timeout")
+	long callTimeout;
+
+	public int getRetryAttempts()
+	{
+		return this.retryAttempts > 0 ? this.retryAttempts : DEFAULT_RETRY_ATTEMPTS;
+	}
+
+	public long getRetryBaseDelay()
+	{
+		return this.retryBaseDelay > 0 ? this.retryBaseDelay : DEFAULT_RETRY_BASE_DELAY;
+	}
+
+	public long getRetryMaxDelay()
+	{
+		return this.retryMaxDelay > 0 ? this.retryMaxDelay : DEFAULT_RETRY_MAX_DELAY;
+	}
+
+	public long getCombinedLinger()
+	{
+		return this.combinedLinger > 0 ? this.combinedLinger : DEFAULT_COMBINED_LINGER;
+	}
+
+	public int getMaxBatchBytes()
+	{
+		return this.maxBatchBytes > 0 ? this.maxBatchBytes : DEFAULT_MAX_BATCH_BYTES;
+	}
+
+	public long getAuthTtl()
+	{
+		return this.authTtl > 0 ? this.authTtl : DEFAULT_AUTH_TTL;
+	}
+
+	public int getBreakerFailureRate()
+	{
+		return this.breakerFailureRate > 0 ? this.breakerFailureRate : DEFAULT_BREAKER_FAILURE_RATE;
+	}
+
+	public long getBreakerSlowCall()
+	{
+		return this.breakerSlowCall > 0 ? this.breakerSlowCall : DEFAULT_BREAKER_SLOW_CALL;
+	}
+
+	public long getBreakerOpenTime()
+	{
+		return this.breakerOpenTime > 0 ? this.breakerOpenTime : DEFAULT_BREAKER_OPEN_TIME;
+	}
+
+	public int getRateLimit()
+	{
+		return this.rateLimit > 0 ? this.rateLimit : DEFAULT_RATE_LIMIT;
+	}
+
+	public int getRateBurst()
+	{
+		return this.rateBurst > 0 ? this.rateBurst : DEFAULT_RATE_BURST;
+	}
+
+	public int getRateWeight(String endpoint)
+	{
+		Integer weight = this.rateWeights == null ? null : this.rateWeights.get(endpoint);
+		return weight != null && weight > 0 ? weight : DEFAULT_RATE_WEIGHT;
+	}
+
+	public int getMaxIdleConnections()
+	{
+		return this.maxIdleConnections > 0 ? this.maxIdleConnections : DEFAULT_MAX_IDLE_CONNECTIONS;
+	}
+
+	public long getKeepAlive()
+	{
+		return this.keepAlive > 0 ? this.keepAlive : DEFAULT_KEEP_ALIVE;
+	}
+
+	public int getMaxRequestsPerHost()
+	{
+		return this.maxRequestsPerHost > 0 ? this.maxRequestsPerHost : DEFAULT_MAX_REQUESTS_PER_HOST;
+	}
+
+	public long getConnectTimeout()
+	{
+		return this.connectTimeout > 0 ? this.connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+	}
+
+	public long getReadTimeout()
+	{
+		return this.readTimeout > 0 ? this.readTimeout : DEFAULT_READ_TIMEOUT;
+	}
+
+	public long getWriteTimeout()
+	{
+		return this.writeTimeout > 0 ? this.writeTimeout : DEFAULT_WRITE_TIMEOUT;
+	}
+
+	public long getCallTimeout()
+	{
+		return this.callTimeout > 0 ? this.callTimeout : DEFAULT_CALL_TIMEOUT;
+	}
+
+	public NameEncoding getNameEncoding()
+	{
+		return this.nameEncoding != null ? this.nameEncoding : NameEncoding.FULL;
+	}
+
+	@Override
+	public void update(ApiConfig other)
+	{
+		this.retryAttempts = other.retryAttempts;
+		this.retryBaseDelay = other.retryBaseDelay;
+		this.retryMaxDelay = other.retryMaxDelay;
+		this.combinedBatch = other.combinedBatch;
+		this.combinedLinger = other.combinedLinger;
+		this.gzipThreshold = other.gzipThreshold;
+		this.maxBatchBytes = other.maxBatchBytes;
+		this.binaryBatches = other.binaryBatches;
+		this.nameEncoding = other.nameEncoding;
+		this.authTtl = other.authTtl;
+		this.breakerFailureRate = other.breakerFailureRate;
+		this.breakerSlowCall = other.breakerSlowCall;
+		this.breakerOpenTime = other.breakerOpenTime;
+		this.rateLimit = other.rateLimit;
+		this.rateBurst = other.rateBurst;
+		this.rateWeights = other.rateWeights;
+		this.disableHttp2 = other.disableHttp2;
+		this.maxIdleConnections = other.maxIdleConnections;
+		this.keepAlive = other.keepAlive;
+		this.maxRequestsPerHost = other.maxRequestsPerHost;
+		this.connectTimeout = other.connectTimeout;
+		this.readTimeout = other.readTimeout;
+		this.writeTimeout = other.writeTimeout;
+		this.callTimeout = other.callTimeout;
+	}
+
+	public static final Predicate<ApiConfig> VALIDATOR;
+
+	static
+	{
+		var attempts = NumInRange.builder()
+			.min(1)
+			.max(20)
+			.build();
+		var delay = NumInRange.builder()
+			.min(100)
+			.max(Duration.of(30, ChronoUnit.MINUTES).toMillis())
+			.build();
+		var linger = NumInRange.builder()
+			.min(1)
+			.max(Duration.of(10, ChronoUnit.SECONDS).toMillis())
+			.build();
+		var authTtl = NumInRange.builder()
+			.min(Duration.of(1, ChronoUnit.MINUTES).toMillis())
+			.max(Duration.of(7, ChronoUnit.DAYS).toMillis())
+			.build();
+		var failureRate = NumInRange.builder()
+			.min(1)
+			.max(100)
+			.build();
+		var slowCall = NumInRange.builder()
+			.min(100)
+			.max(Duration.of(5, ChronoUnit.MINUTES).toMillis())
+			.build();
+		var openTime = NumInRange.builder()
+			.min(Duration.of(1, ChronoUnit.SECONDS).toMillis())
+			.max(Duration.of(10, ChronoUnit.MINUTES).toMillis())
+			.build();
+		var rateLimit = NumInRange.builder()
+			.min(1)
+			.max(10_000)
+			.build();
+		var rateBurst = NumInRange.builder()
+			.min(1)
+			.max(1_000)
+			.build();
+		var connections = NumInRange.builder()
+			.min(1)
+			.max(16)
+			.build();
+		var keepAlive = NumInRange.builder()
+			.min(Duration.of(1, ChronoUnit.SECONDS).toMillis())
+			.max(Duration.of(30, ChronoUnit.MINUTES).toMillis())
+			.build();
+		var timeout = NumInRange.builder()
+			.min(100)
+			.max(Duration.of(5, ChronoUnit.MINUTES).toMillis())
+			.build();
+		var batchBytes = NumInRange.builder()
+			.min(4 * 1024)
+			.max(16 * 1024 * 1024)
+			.build();
+		VALIDATOR = config -> config != null
+			&& batchBytes.test(config.getMaxBatchBytes())
+			&& connections.test(config.getMaxIdleConnections())
+			&& connections.test(config.getMaxRequestsPerHost())
+			&& keepAlive.test(config.getKeepAlive())
+			&& timeout.test(config.getConnectTimeout())
+			&& timeout.test(config.getReadTimeout())
+			&& timeout.test(config.getWriteTimeout())
+			&& timeout.test(config.getCallTimeout())
+			&& rateLimit.test(config.getRateLimit())
+			&& rateBurst.test(config.getRateBurst())
+			&& (config.getRateWeights() == null || config.getRateWeights().values().stream().allMatch(rateBurst::test))
+			&& authTtl.test(config.getAuthTtl())
+			&& failureRate.test(config.getBreakerFailureRate())
+			&& slowCall.test(config.getBreakerSlowCall())
+			&& openTime.test(config.getBreakerOpenTime())
+			&& config.getGzipThreshold() >= 0
+			&& linger.test(config.getCombinedLinger())
+			&& attempts.test(config.getRetryAttempts())
+			&& delay.test(config.getRetryBaseDelay())
+			&& delay.test(config.getRetryMaxDelay())
+			&& config.getRetryBaseDelay() <= config.getRetryMaxDelay();
+	}
+
+	public static ApiConfig getEmpty()
+	{
+		return ApiConfig.builder().build();
+	}
+}
@@ -2,6 +2,8 @@ package com.ironclad.clangoals.components.service.config.dto;
 
 import com.ironclad.clangoals.components.service.config.Updatable;
 import com.ironclad.clangoals.util.predicate.NumInRange;
+import com.ironclad.clangoals.util.queue.FlushMode;
+import com.ironclad.clangoals.util.queue.OverflowPolicy;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.function.Predicate;
@@ -9,7 +11,7 @@ import lombok.Builder;
 import lombok.Data;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class QueueConfig implements Updatable<QueueConfig>
 {
 	/**
@@ -20,12 +22,84 @@ public class QueueConfig implements Updatable<QueueConfig>
 	 * Interval in seconds between sending batches.
 	 */
 	long interval;
+	/**
+	 * Number of preallocated slots in the queue, 0 for an unbounded queue.
+	 * Rounded up to a power of two.
+	 */
+	int capacity;
+	/**
+	 * What to do with items arriving while the queue is at capacity.
+	 * Defaults to {@link OverflowPolicy#SPILL} when not provided.
+	 */
+	OverflowPolicy overflow;
+	/**
+	 * Milliseconds to wait for outstanding uploads when the queue shuts down.
+	 * 0 for the default.
+	 */
+	long drainTimeout;
+	/**
+	 * How flushes are scheduled.
+	 * Defaults to {@link FlushMode#FIXED} when not provided.
+	 */
+	FlushMode mode;
+	/**
+	 * Adaptive mode, shortest interval in seconds. 0 for a quarter of the interval.
+	 */
+	long minInterval;
+	/**
+	 * Adaptive mode, longest interval in seconds. 0 for twice the interval.
+	 */
+	long maxInterval;
+	/**
+	 * Adaptive mode, smallest size limit. 0 for a quarter of the size.
+	 */
+	int minSize;
+	/**
+	 * Adaptive mode, largest size limit. 0 for twice the size.
+	 */
+	int maxSize;
+	/**
+	 * Adaptive mode, milliseconds above which an upload counts as slow. 0 for the default.
+	 */
+	long targetLatency;
+	/**
+	 * Maximum number of uploads in flight at once, 0 for one.
+	 * Batches are always handed over in order, more than one may complete out of order.
+	 */
+	int maxInFlight;
+	/**
+	 * Milliseconds between an urgent item arriving and the flush carrying it, 0 for the default.
+	 * Urgent items arriving within the delay share the flush.
+	 */
+	long urgentDelay;
+	/**
+	 * Milliseconds, range of the deterministic per account offset added to scheduled flushes, 0 for none.
+	 * Keeps clients that start together from flushing together.
+	 */
+	long phaseSpread;
+	/**
+	 * Milliseconds, range of the random delay added to scheduled flushes, 0 for none.
+	 */
+	long jitter;
 
 	@Override
 	public void update(QueueConfig other)
 	{
 		this.size = other.size;
 		this.interval = other.interval;
+		this.capacity = other.capacity;
+		this.overflow = other.overflow;
+		this.drainTimeout = other.drainTimeout;
+		this.mode = other.mode;
+		this.minInterval = other.minInterval;
+		this.maxInterval = other.maxInterval;
+		this.minSize = other.minSize;
+		this.maxSize = other.maxSize;
+		this.targetLatency = other.targetLatency;
+		this.maxInFlight = other.maxInFlight;
+		this.urgentDelay = other.urgentDelay;
+		this.phaseSpread = other.phaseSpread;
+		this.jitter = other.jitter;
 	}
 
 	public static final Predicate<QueueConfig> VALIDATOR;
@@ -39,7 +113,46 @@ public class QueueConfig implements Updatable<QueueConfig>
 			.min(1)
 			.max(1000)
 			.build();
+		var capacity = NumInRange.builder()
+			.min(1)
+			.max(1 << 16)
+			.build();
+		var drainTimeout = NumInRange.builder()
+			.min(0)
+			.max(Duration.of(30, ChronoUnit.SECONDS).toMillis())
+			.build();
+		var targetLatency = NumInRange.builder()
+			.min(0)
+			.max(Duration.of(1, ChronoUnit.MINUTES).toMillis())
+			.build();
+		var maxInFlight = NumInRange.builder()
+			.min(0)
+			.max(8)
+			.build();
+		var urgentDelay = NumInRange.builder()
+			.min(0)
+			.max(Duration.of(5, ChronoUnit.SECONDS).toMillis())
+			.build();
+		var spread = NumInRange.builder()
+			.min(0)
+			.max(Duration.of(5, ChronoUnit.MINUTES).toMillis())
+			.build();
+		Predicate<QueueConfig> adaptive = c -> c.getMode() != FlushMode.ADAPTIVE
+			|| (c.getMinInterval() == 0 || interval.test(c.getMinInterval()))
+			&& (c.getMaxInterval() == 0 || interval.test(c.getMaxInterval()))
+			&& (c.getMinInterval() == 0 || c.getMaxInterval() == 0 || c.getMinInterval() <= c.getMaxInterval())
+			&& (c.getMinSize() == 0 || size.test(c.getMinSize()))
+			&& (c.getMaxSize() == 0 || size.test(c.getMaxSize()))
+			&& (c.getMinSize() == 0 || c.getMaxSize() == 0 || c.getMinSize() <= c.getMaxSize())
+			&& targetLatency.test(c.getTargetLatency());
 		VALIDATOR = batchConfig -> interval.test(batchConfig.getInterval())
-			&& size.test(batchConfig.getSize());
+			&& adaptive.test(batchConfig)
+			&& maxInFlight.test(batchConfig.getMaxInFlight())
+			&& urgentDelay.test(batchConfig.getUrgentDelay())
+			&& spread.test(batchConfig.getPhaseSpread())
+			&& spread.test(batchConfig.getJitter())
+			&& drainTimeout.test(batchConfig.getDrainTimeout())
+			&& size.test(batchConfig.getSize())
+			&& (batchConfig.getCapacity() == 0 || capacity.test(batchConfig.getCapacity()) && batchConfig.getCapacity() >= batchConfig.getSize());
 	}
 }
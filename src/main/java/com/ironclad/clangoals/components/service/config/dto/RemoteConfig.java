@@ -33,6 +33,11 @@ public class RemoteConfig implements Updatable<RemoteConfig>
 	ItemTrackingConfig itemTrackingConfig;
 	@SerializedName("npc_tracking")
 	NPCTrackingConfig npcTrackingConfig;
+	/**
+	 * Optional, defaults are used when the server does not provide it.
+	 */
+	@SerializedName("api")
+	ApiConfig apiConfig;
 
 	public void update(RemoteConfig other)
 	{
@@ -43,5 +48,6 @@ public class RemoteConfig implements Updatable<RemoteConfig>
 		this.npcTrackingConfig.update(other.npcTrackingConfig);
 		this.itemTrackingConfig.update(other.itemTrackingConfig);
 		this.xpTrackingConfig.update(other.xpTrackingConfig);
+		this.apiConfig.update(other.apiConfig == null ? ApiConfig.getEmpty() : other.apiConfig);
 	}
 }
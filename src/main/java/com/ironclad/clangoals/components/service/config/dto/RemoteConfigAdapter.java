@@ -0,0 +1,123 @@
+package com.ironclad.clangoals.components.service.config.dto;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ironclad.clangoals.components.tracking.loot.ItemTrackingConfig;
+import com.ironclad.clangoals.components.tracking.npcs.NPCTrackingConfig;
+import com.ironclad.clangoals.components.tracking.xp.XpTrackingConfig;
+import com.ironclad.clangoals.util.gson.JsonReaders;
+import com.ironclad.clangoals.util.predicate.NumInRange;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Objects;
+import net.runelite.api.WorldType;
+
+/**
+ * Decodes and validates a {@link RemoteConfig} in one pass, with the same rules as
+ * {@link com.ironclad.clangoals.util.predicate.ConfigValidator}.
+ */
+public class RemoteConfigAdapter extends TypeAdapter<RemoteConfig>
+{
+	private static final NumInRange REFRESH_VALID = NumInRange.builder()
+		.min(1)
+		.max(60)
+		.build();
+
+	private final TypeAdapter<RemoteConfig> delegate;
+	private final TypeAdapter<Instant> instant;
+	private final TypeAdapter<EnumSet<WorldType>> worlds;
+	private final TypeAdapter<XpTrackingConfig> xp;
+	private final TypeAdapter<ItemTrackingConfig> items;
+	private final TypeAdapter<NPCTrackingConfig> npcs;
+	private final TypeAdapter<ApiConfig> api;
+
+	public RemoteConfigAdapter(Gson gson, TypeAdapter<RemoteConfig> delegate)
+	{
+		this.delegate = delegate;
+		this.instant = gson.getAdapter(Instant.class);
+		this.worlds = gson.getAdapter(new TypeToken<EnumSet<WorldType>>(){});
+		this.xp = gson.getAdapter(XpTrackingConfig.class);
+		this.items = gson.getAdapter(ItemTrackingConfig.class);
+		this.npcs = gson.getAdapter(NPCTrackingConfig.class);
+		this.api = gson.getAdapter(ApiConfig.class);
+	}
+
+	@Override
+	public void write(JsonWriter out, RemoteConfig value) throws IOException
+	{
+		this.delegate.write(out, value);
+	}
+
+	@Override
+	public RemoteConfig read(JsonReader in) throws IOException
+	{
+		if (JsonReaders.nextNull(in))
+		{
+			return null;
+		}
+
+		RemoteConfig config = RemoteConfig.builder().build();
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "last_updated":
+					config.setLastUpdated(JsonReaders.readValid(in, this.instant, Objects::nonNull));
+					break;
+				case "refresh_interval":
+					config.setRefreshInterval(in.nextInt());
+					if (!REFRESH_VALID.test(config.getRefreshInterval()))
+					{
+						throw JsonReaders.invalid(in, "Refresh interval out of range");
+					}
+					break;
+				case "is_maintenance":
+					config.setMaintenance(in.nextBoolean());
+					break;
+				case "disabled_worlds":
+					config.setDisabledWorlds(JsonReaders.readValid(in, this.worlds, Objects::nonNull));
+					break;
+				case "xp_tracking":
+					config.setXpTrackingConfig(JsonReaders.readValid(in, this.xp, xp -> xp.getQueueConfig() != null && XpTrackingConfig.VALIDATOR.test(xp)));
+					break;
+				case "item_tracking":
+					// Validated by its own adapter
+					config.setItemTrackingConfig(JsonReaders.readValid(in, this.items, Objects::nonNull));
+					break;
+				case "npc_tracking":
+					config.setNpcTrackingConfig(JsonReaders.readValid(in, this.npcs, Objects::nonNull));
+					break;
+				case "api":
+					ApiConfig api = this.api.read(in);
+					if (api != null && !ApiConfig.VALIDATOR.test(api))
+					{
+						throw JsonReaders.invalid(in, "Invalid api config");
+					}
+					config.setApiConfig(api);
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (config.getLastUpdated() == null
+			|| config.getDisabledWorlds() == null
+			|| config.getXpTrackingConfig() == null
+			|| config.getItemTrackingConfig() == null
+			|| config.getNpcTrackingConfig() == null)
+		{
+			throw JsonReaders.invalid(in, "Missing required config");
+		}
+		if (!REFRESH_VALID.test(config.getRefreshInterval()))
+		{
+			throw JsonReaders.invalid(in, "Missing refresh interval");
+		}
+		return config;
+	}
+}
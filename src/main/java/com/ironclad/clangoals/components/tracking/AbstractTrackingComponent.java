@@ -5,19 +5,28 @@ import com.ironclad.clangoals.component.Component;
 import com.ironclad.clangoals.components.service.PluginState;
 import com.ironclad.clangoals.components.service.PluginStateChanged;
 import com.ironclad.clangoals.components.service.api.ApiService;
+import com.ironclad.clangoals.components.service.api.CircuitState;
 import com.ironclad.clangoals.components.service.config.RemoteConfigChanged;
 import com.ironclad.clangoals.components.service.config.dto.QueueConfig;
 import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
 import com.ironclad.clangoals.util.BatchQueue;
+import com.ironclad.clangoals.util.queue.Admission;
+import com.ironclad.clangoals.util.queue.DrainResult;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.events.GameStateChanged;
 import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
 
+@Slf4j
 @RequiredArgsConstructor
 public abstract class AbstractTrackingComponent<Q, C extends TrackingConfig<?>> implements Component
 {
@@ -33,12 +42,15 @@ public abstract class AbstractTrackingComponent<Q, C extends TrackingConfig<?>>
 	private BatchQueue<Q> queue;
 	@Getter(AccessLevel.PROTECTED)
 	private PluginState state;
+	private boolean loggedOut;
 
 	@Override
 	public final void onStartUp(PluginState state)
 	{
 		this.state = state;
-		rebuildQueue();
+		buildQueue();
+		updateSuspension();
+		this.api.registerStream(this, window -> getQueue().flushDue(window));
 		this.eventBus.register(this);
 		onComponentStart(state);
 	}
@@ -46,9 +58,22 @@ public abstract class AbstractTrackingComponent<Q, C extends TrackingConfig<?>>
 	@Override
 	public final void onShutDown(PluginState state)
 	{
-		this.queue.shutdown();
 		this.eventBus.unregister(this);
 		onComponentStop(state);
+		//Called on the client thread, the drain runs on the executor
+		String name = getClass().getSimpleName();
+		CompletableFuture<DrainResult> drain = this.queue.shutdown();
+		this.api.unregisterStream(this, drain);
+		drain.whenComplete((result, e) -> {
+			if (e != null)
+			{
+				log.warn("{} failed to drain", name, e);
+			}
+			else
+			{
+				log.debug("{} drained, delivered: {} abandoned: {}", name, result.getDelivered(), result.getAbandoned());
+			}
+		});
 	}
 
 	protected void onComponentStart(PluginState state)
@@ -61,7 +86,32 @@ public abstract class AbstractTrackingComponent<Q, C extends TrackingConfig<?>>
 
 	}
 
-	protected abstract void onFlush(List<Q> items);
+	/**
+	 * Upload a batch of items.
+	 *
+	 * @return Completes with true once the server accepted the batch.
+	 */
+	protected abstract CompletableFuture<Boolean> onFlush(List<Q> items);
+
+	/**
+	 * Merge function used when the queue overflows with {@link com.ironclad.clangoals.util.queue.OverflowPolicy#COALESCE}.
+	 *
+	 * @return null if items of this component can't be merged.
+	 */
+	protected BinaryOperator<Q> merger()
+	{
+		return null;
+	}
+
+	/**
+	 * Key used to keep only the latest pending item per key.
+	 *
+	 * @return null to queue every item.
+	 */
+	protected Function<Q, ?> key()
+	{
+		return null;
+	}
 
 	protected abstract boolean componentEnabled(IroncladClanGoalsConfig config);
 
@@ -82,24 +132,96 @@ public abstract class AbstractTrackingComponent<Q, C extends TrackingConfig<?>>
 	private void onPluginStateChanged(PluginStateChanged e)
 	{
 		this.state = e.getCurrent();
+		if (e.getPrevious().getCircuit() != e.getCurrent().getCircuit())
+		{
+			updateSuspension();
+		}
+	}
+
+	/**
+	 * No timers while logged out, subclasses flush on the way out.
+	 */
+	@Subscribe
+	private void onQueueGameStateChanged(GameStateChanged e)
+	{
+		switch (e.getGameState())
+		{
+			case LOGIN_SCREEN:
+				this.loggedOut = true;
+				updateSuspension();
+				break;
+			case LOGGED_IN:
+				this.loggedOut = false;
+				updateSuspension();
+				break;
+		}
+	}
+
+	/**
+	 * Items are held in the queue while logged out or while the server is failing.
+	 */
+	private void updateSuspension()
+	{
+		if (this.loggedOut || this.state.getCircuit() == CircuitState.OPEN)
+		{
+			this.queue.suspend();
+		}
+		else
+		{
+			this.queue.resume();
+		}
 	}
 
 	@Subscribe
 	private void onRemoteConfigChanged(RemoteConfigChanged e)
 	{
-		rebuildQueue();
+		try
+		{
+			if (this.queue.reconfigure(getConfig().getQueueConfig()))
+			{
+				log.debug("{} queue reconfigured", getClass().getSimpleName());
+			}
+		}
+		catch (IllegalArgumentException ex)
+		{
+			log.warn("{} queue kept its settings, invalid config: {}", getClass().getSimpleName(), ex.getMessage());
+		}
 		rebuild(getConfig());
 	}
 
-	private void rebuildQueue()
+	private void buildQueue()
 	{
 		QueueConfig qConf = getConfig().getQueueConfig();
-		if (this.queue != null)
+		this.queue = BatchQueue.<Q>builder()
+			.config(qConf)
+			.merger(merger())
+			.key(key())
+			.phaseSeed(this.api::getAccountHash)
+			.onFlush(this::onFlush)
+			.build();
+		this.queue.start(this.executor);
+	}
+
+	/**
+	 * Add an item to the queue, logging anything that was dropped.
+	 */
+	protected void enqueue(Q item)
+	{
+		enqueue(item, false);
+	}
+
+	/**
+	 * Add an item to the queue, logging anything that was dropped.
+	 *
+	 * @param urgent Send the item straight away, see {@link BatchQueue#addItem(Object, boolean)}.
+	 */
+	protected void enqueue(Q item, boolean urgent)
+	{
+		Admission result = getQueue().addItem(item, urgent);
+		if (!result.isAccepted())
 		{
-			this.queue.shutdown();
+			log.debug("{} dropped item: {}", getClass().getSimpleName(), result);
 		}
-		this.queue = new BatchQueue<>(qConf.getSize(), qConf.getInterval(), this::onFlush);
-		this.queue.start(this.executor);
 	}
 
 	protected boolean blockTracking()
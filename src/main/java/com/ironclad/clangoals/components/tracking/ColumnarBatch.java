@@ -0,0 +1,103 @@
+package com.ironclad.clangoals.components.tracking;
+
+import com.ironclad.clangoals.components.service.api.payload.RecordSink;
+import com.ironclad.clangoals.components.service.api.payload.RecordSource;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import lombok.NonNull;
+
+/**
+ * Staging buffer for id based rows, kept as parallel primitive columns.
+ * <p>
+ * Rows are written straight from the columns, no row objects are created.
+ * Rows are grouped into records with {@link #endRecord()}, which are kept in one request.
+ * Meant to be reused between flushes, not thread safe.
+ */
+public final class ColumnarBatch implements RecordSource
+{
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final String idField;
+	/**
+	 * Quantity field name, null to leave quantities out of the rows.
+	 */
+	private final String quantityField;
+	private final NameTable names;
+	private int[] ids = new int[INITIAL_CAPACITY];
+	private int[] quantities = new int[INITIAL_CAPACITY];
+	private int[] nameRefs = new int[INITIAL_CAPACITY];
+	/**
+	 * Rows closing a record.
+	 */
+	private final BitSet recordEnds = new BitSet(INITIAL_CAPACITY);
+	private int size;
+
+	public ColumnarBatch(@NonNull String idField, String quantityField, @NonNull NameTable names)
+	{
+		this.idField = idField;
+		this.quantityField = quantityField;
+		this.names = names;
+	}
+
+	/**
+	 * @param name Reference from the batches {@link NameTable}.
+	 */
+	public void add(int id, int quantity, int name)
+	{
+		if (this.size == this.ids.length)
+		{
+			int capacity = this.size * 2;
+			this.ids = Arrays.copyOf(this.ids, capacity);
+			this.quantities = Arrays.copyOf(this.quantities, capacity);
+			this.nameRefs = Arrays.copyOf(this.nameRefs, capacity);
+		}
+		this.ids[this.size] = id;
+		this.quantities[this.size] = quantity;
+		this.nameRefs[this.size] = name;
+		this.size++;
+	}
+
+	/**
+	 * Close the record made of the rows added since the previous one.
+	 */
+	public void endRecord()
+	{
+		if (this.size > 0)
+		{
+			this.recordEnds.set(this.size - 1);
+		}
+	}
+
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Empty the batch, keeping its arrays.
+	 */
+	public void clear()
+	{
+		this.size = 0;
+		this.recordEnds.clear();
+	}
+
+	@Override
+	public void writeTo(RecordSink out) throws IOException
+	{
+		for (int i = 0; i < this.size; i++)
+		{
+			out.beginRow().field(this.idField, this.ids[i]);
+			if (this.quantityField != null)
+			{
+				out.field(this.quantityField, this.quantities[i]);
+			}
+			out.field("name", this.names.get(this.nameRefs[i])).endRow();
+			if (this.recordEnds.get(i))
+			{
+				out.endRecord();
+			}
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.ironclad.clangoals.components.tracking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns item and NPC names, so queued records only hold an int per name.
+ * <p>
+ * Names are never removed, the table is bounded by the names that exist in game.
+ */
+public final class NameTable
+{
+	private final Map<String, Integer> refs = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+
+	public synchronized int intern(String name)
+	{
+		Integer ref = this.refs.get(name);
+		if (ref == null)
+		{
+			ref = this.names.size();
+			this.names.add(name);
+			this.refs.put(name, ref);
+		}
+		return ref;
+	}
+
+	public synchronized String get(int ref)
+	{
+		return this.names.get(ref);
+	}
+}
@@ -2,7 +2,6 @@ package com.ironclad.clangoals.components.tracking.loot;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
-import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -12,15 +11,19 @@ import com.ironclad.clangoals.components.service.api.ApiService;
 import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
 import com.ironclad.clangoals.components.service.config.RemoteConfigChanged;
 import com.ironclad.clangoals.components.tracking.AbstractTrackingComponent;
+import com.ironclad.clangoals.components.tracking.ColumnarBatch;
+import com.ironclad.clangoals.components.tracking.NameTable;
 import com.ironclad.clangoals.util.Region;
 import com.ironclad.clangoals.util.WorldUtils;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.stream.Collectors;
+import java.util.function.BinaryOperator;
 import lombok.NonNull;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
@@ -43,6 +46,11 @@ public class ItemTrackingComponent extends AbstractTrackingComponent<ItemTrackin
 	private final ItemManager itemManager;
 	private final String endpoint;
 	private final Table<LootRecordType, String, Mapping> table;
+	private final NameTable names = new NameTable();
+	/**
+	 * Reused by every flush, flushes of a queue never overlap.
+	 */
+	private final ColumnarBatch staging = new ColumnarBatch("item_id", "quantity", this.names);
 
 	@Inject
 	public ItemTrackingComponent(ApiService api,
@@ -60,21 +68,21 @@ public class ItemTrackingComponent extends AbstractTrackingComponent<ItemTrackin
 		this.table = HashBasedTable.create();
 	}
 
-	protected void onFlush(List<Record> items)
+	protected CompletableFuture<Boolean> onFlush(List<Record> items)
 	{
 		log.debug("Flushing Item Queue");
-		List<ItemData> allTheThings = items.stream()
-			.flatMap(e -> e.getData().stream())
-			.collect(Collectors.toList());
-
-		this.api.batchUpdateAsync(this.endpoint, allTheThings, (item) ->
+		this.staging.clear();
+		for (Record record : items)
 		{
-			JsonObject tmp = new JsonObject();
-			tmp.addProperty("item_id", item.getItemId());
-			tmp.addProperty("quantity", item.getQuantity());
-			tmp.addProperty("name", item.getName());
-			return tmp;
-		});
+			record.appendTo(this.staging);
+		}
+		return this.api.batchUpdateAsync(this.endpoint, this.staging);
+	}
+
+	@Override
+	protected BinaryOperator<Record> merger()
+	{
+		return Record::merge;
 	}
 
 	@Override
@@ -124,7 +132,7 @@ public class ItemTrackingComponent extends AbstractTrackingComponent<ItemTrackin
 		{
 			case LOGIN_SCREEN:
 			case HOPPING:
-				getQueue().flush();
+				getQueue().flushSpread();
 				break;
 		}
 	}
@@ -141,10 +149,7 @@ public class ItemTrackingComponent extends AbstractTrackingComponent<ItemTrackin
 		Mapping mapping = this.table.get(e.getType(), e.getName());
 		if (Objects.nonNull(mapping))
 		{
-			ItemData eventItem = new ItemData(mapping.getId(), 1, mapping.getEvent());
-			List<ItemData> items = toItemData(e.getItems());
-			items.add(eventItem);
-			logItems(items);
+			logItems(toRecord(e.getItems(), mapping), getConfig().isUrgentEvent(mapping.getEvent()));
 		}
 	}
 
@@ -161,26 +166,57 @@ public class ItemTrackingComponent extends AbstractTrackingComponent<ItemTrackin
 
 	private void logItems(@NonNull Collection<ItemStack> items)
 	{
-		logItems(toItemData(items));
+		logItems(toRecord(items, null), false);
 	}
 
-	private void logItems(@NonNull List<ItemData> items)
+	/**
+	 * @param urgent Send straight away, also set if any of the items is urgent.
+	 */
+	private void logItems(@NonNull Record record, boolean urgent)
 	{
-		getQueue().addItem(new Record(items));
+		ItemTrackingConfig config = getConfig();
+		for (int i = 0; !urgent && i < record.ids.length; i++)
+		{
+			urgent = config.isUrgentItem(record.ids[i]);
+		}
+		enqueue(record, urgent);
 	}
 
-	private List<ItemData> toItemData(Collection<ItemStack> items)
+	/**
+	 * @param event Loot event logged as an extra item, may be null.
+	 */
+	private Record toRecord(Collection<ItemStack> items, Mapping event)
 	{
-		return items.stream()
-			.filter(Objects::nonNull)
-			.map(stack -> new ItemData(
-				stack.getId(),
-				stack.getQuantity(),
-				this.itemManager
-					.getItemComposition(stack.getId())
-					.getName()
-			))
-			.collect(Collectors.toList());
+		int count = event == null ? 0 : 1;
+		for (ItemStack stack : items)
+		{
+			if (stack != null)
+			{
+				count++;
+			}
+		}
+
+		int[] ids = new int[count];
+		int[] quantities = new int[count];
+		int[] names = new int[count];
+		int i = 0;
+		for (ItemStack stack : items)
+		{
+			if (stack != null)
+			{
+				ids[i] = stack.getId();
+				quantities[i] = stack.getQuantity();
+				names[i] = this.names.intern(this.itemManager.getItemComposition(stack.getId()).getName());
+				i++;
+			}
+		}
+		if (event != null)
+		{
+			ids[i] = event.getId();
+			quantities[i] = 1;
+			names[i] = this.names.intern(event.getEvent());
+		}
+		return new Record(ids, quantities, names);
 	}
 
 	@Override
@@ -190,17 +226,41 @@ public class ItemTrackingComponent extends AbstractTrackingComponent<ItemTrackin
 			|| WorldUtils.inRegion(this.client, BLOCKED_REGIONS);
 	}
 
-	@Value
-	static class ItemData
-	{
-		int itemId;
-		int quantity;
-		@NonNull String name;
-	}
-
+	/**
+	 * One loot drop, names are {@link NameTable} references.
+	 */
 	@Value
 	static class Record
 	{
-		List<ItemData> data;
+		int[] ids;
+		int[] quantities;
+		int[] names;
+
+		void appendTo(ColumnarBatch batch)
+		{
+			for (int i = 0; i < this.ids.length; i++)
+			{
+				batch.add(this.ids[i], this.quantities[i], this.names[i]);
+			}
+			batch.endRecord();
+		}
+
+		/**
+		 * Concatenate two drops.
+		 */
+		Record merge(Record other)
+		{
+			return new Record(
+				concat(this.ids, other.ids),
+				concat(this.quantities, other.quantities),
+				concat(this.names, other.names));
+		}
+
+		private static int[] concat(int[] a, int[] b)
+		{
+			int[] result = Arrays.copyOf(a, a.length + b.length);
+			System.arraycopy(b, 0, result, a.length, b.length);
+			return result;
+		}
 	}
 }
@@ -18,12 +18,24 @@ public class ItemTrackingConfig implements TrackingConfig<ItemTrackingConfig>
 	QueueConfig queueConfig;
 	@SerializedName("loot_events")
 	Set<Mapping> lootEvents;
+	/**
+	 * Item ids sent as soon as they are received.
+	 */
+	@SerializedName("urgent_items")
+	Set<Integer> urgentItems;
+	/**
+	 * Loot event names, as in {@link Mapping#getEvent()}, sent as soon as they are received.
+	 */
+	@SerializedName("urgent_events")
+	Set<String> urgentEvents;
 
 	@Override
 	public void update(ItemTrackingConfig other)
 	{
 		this.enabled = other.enabled;
 		this.lootEvents = other.lootEvents;
+		this.urgentItems = other.urgentItems;
+		this.urgentEvents = other.urgentEvents;
 		this.queueConfig.update(other.queueConfig);
 	}
 
@@ -33,6 +45,16 @@ public class ItemTrackingConfig implements TrackingConfig<ItemTrackingConfig>
 		return this.enabled;
 	}
 
+	public boolean isUrgentItem(int id)
+	{
+		return this.urgentItems != null && this.urgentItems.contains(id);
+	}
+
+	public boolean isUrgentEvent(String event)
+	{
+		return this.urgentEvents != null && this.urgentEvents.contains(event);
+	}
+
 	public static final ItemTrackingConfig DEFAULT;
 	public static final Predicate<ItemTrackingConfig> VALIDATOR;
 
@@ -56,6 +78,8 @@ public class ItemTrackingConfig implements TrackingConfig<ItemTrackingConfig>
 				.interval(150)
 				.build())
 			.lootEvents(Set.of())
+			.urgentItems(Set.of())
+			.urgentEvents(Set.of())
 			.build();
 	}
 }
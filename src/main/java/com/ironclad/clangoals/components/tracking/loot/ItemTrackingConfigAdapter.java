@@ -0,0 +1,88 @@
+package com.ironclad.clangoals.components.tracking.loot;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ironclad.clangoals.components.service.config.dto.QueueConfig;
+import com.ironclad.clangoals.util.gson.JsonReaders;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Decodes and validates an {@link ItemTrackingConfig} in one pass, with the same rules as {@link ItemTrackingConfig#VALIDATOR}.
+ */
+public class ItemTrackingConfigAdapter extends TypeAdapter<ItemTrackingConfig>
+{
+	private final TypeAdapter<ItemTrackingConfig> delegate;
+	private final TypeAdapter<QueueConfig> queue;
+	private final TypeAdapter<Integer> integer;
+	private final TypeAdapter<String> string;
+	private final MappingAdapter mapping;
+
+	public ItemTrackingConfigAdapter(Gson gson, TypeAdapter<ItemTrackingConfig> delegate)
+	{
+		this.delegate = delegate;
+		this.queue = gson.getAdapter(QueueConfig.class);
+		this.integer = gson.getAdapter(Integer.class);
+		this.string = gson.getAdapter(String.class);
+		this.mapping = new MappingAdapter(gson);
+	}
+
+	@Override
+	public void write(JsonWriter out, ItemTrackingConfig value) throws IOException
+	{
+		this.delegate.write(out, value);
+	}
+
+	@Override
+	public ItemTrackingConfig read(JsonReader in) throws IOException
+	{
+		if (JsonReaders.nextNull(in))
+		{
+			return null;
+		}
+
+		ItemTrackingConfig.ItemTrackingConfigBuilder config = ItemTrackingConfig.builder();
+		boolean hasQueue = false;
+		boolean hasEvents = false;
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "enabled":
+					config.enabled(in.nextBoolean());
+					break;
+				case "batch_config":
+					config.queueConfig(JsonReaders.readValid(in, this.queue, QueueConfig.VALIDATOR));
+					hasQueue = true;
+					break;
+				case "loot_events":
+					Set<Mapping> events = JsonReaders.readSet(in, this.mapping);
+					if (events == null)
+					{
+						throw JsonReaders.invalid(in, "Null loot events");
+					}
+					config.lootEvents(events);
+					hasEvents = true;
+					break;
+				case "urgent_items":
+					config.urgentItems(JsonReaders.readSet(in, this.integer));
+					break;
+				case "urgent_events":
+					config.urgentEvents(JsonReaders.readSet(in, this.string));
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (!hasQueue || !hasEvents)
+		{
+			throw JsonReaders.invalid(in, "Incomplete item tracking config");
+		}
+		return config.build();
+	}
+}
@@ -0,0 +1,89 @@
+package com.ironclad.clangoals.components.tracking.loot;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ironclad.clangoals.util.gson.JsonReaders;
+import java.io.IOException;
+import joptsimple.internal.Strings;
+import net.runelite.http.api.loottracker.LootRecordType;
+
+/**
+ * Decodes and validates a loot {@link Mapping}, with the same rules as {@link Mapping#VALIDATOR}.
+ */
+class MappingAdapter extends TypeAdapter<Mapping>
+{
+	private final TypeAdapter<Mapping> delegate;
+	private final TypeAdapter<LootRecordType> type;
+
+	MappingAdapter(Gson gson)
+	{
+		this.delegate = gson.getAdapter(Mapping.class);
+		this.type = gson.getAdapter(LootRecordType.class);
+	}
+
+	@Override
+	public void write(JsonWriter out, Mapping value) throws IOException
+	{
+		this.delegate.write(out, value);
+	}
+
+	@Override
+	public Mapping read(JsonReader in) throws IOException
+	{
+		if (JsonReaders.nextNull(in))
+		{
+			throw JsonReaders.invalid(in, "Null loot event");
+		}
+
+		String event = null;
+		String displayName = null;
+		int iconID = 0;
+		LootRecordType type = null;
+		int id = 0;
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "event":
+					event = JsonReaders.nextString(in);
+					if (Strings.isNullOrEmpty(event))
+					{
+						throw JsonReaders.invalid(in, "Empty event");
+					}
+					break;
+				case "display_name":
+					displayName = JsonReaders.nextString(in);
+					if (Strings.isNullOrEmpty(displayName))
+					{
+						throw JsonReaders.invalid(in, "Empty display name");
+					}
+					break;
+				case "icon_id":
+					iconID = in.nextInt();
+					if (iconID <= 0)
+					{
+						throw JsonReaders.invalid(in, "Invalid icon id");
+					}
+					break;
+				case "type":
+					type = JsonReaders.readValid(in, this.type, t -> true);
+					break;
+				case "id":
+					id = in.nextInt();
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (event == null || displayName == null || type == null || iconID <= 0)
+		{
+			throw JsonReaders.invalid(in, "Incomplete loot event");
+		}
+		return new Mapping(event, displayName, iconID, type, id);
+	}
+}
@@ -0,0 +1,77 @@
+package com.ironclad.clangoals.components.tracking.npcs;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ironclad.clangoals.util.gson.JsonReaders;
+import java.io.IOException;
+import java.util.Set;
+import joptsimple.internal.Strings;
+
+/**
+ * Decodes and validates an NPC {@link Mapping}, with the same rules as {@link Mapping#VALIDATOR}.
+ */
+class MappingAdapter extends TypeAdapter<Mapping>
+{
+	private final TypeAdapter<Mapping> delegate;
+	private final TypeAdapter<Integer> integer;
+
+	MappingAdapter(Gson gson)
+	{
+		this.delegate = gson.getAdapter(Mapping.class);
+		this.integer = gson.getAdapter(Integer.class);
+	}
+
+	@Override
+	public void write(JsonWriter out, Mapping value) throws IOException
+	{
+		this.delegate.write(out, value);
+	}
+
+	@Override
+	public Mapping read(JsonReader in) throws IOException
+	{
+		if (JsonReaders.nextNull(in))
+		{
+			throw JsonReaders.invalid(in, "Null mapping");
+		}
+
+		String name = null;
+		int id = 0;
+		Set<Integer> blacklist = null;
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "name":
+					name = JsonReaders.nextString(in);
+					if (Strings.isNullOrEmpty(name))
+					{
+						throw JsonReaders.invalid(in, "Empty name");
+					}
+					break;
+				case "id":
+					id = in.nextInt();
+					break;
+				case "blacklist":
+					blacklist = JsonReaders.readSet(in, this.integer);
+					if (blacklist == null)
+					{
+						throw JsonReaders.invalid(in, "Null blacklist");
+					}
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (name == null || blacklist == null)
+		{
+			throw JsonReaders.invalid(in, "Incomplete mapping");
+		}
+		return new Mapping(name, id, blacklist);
+	}
+}
@@ -12,7 +12,7 @@ import lombok.NonNull;
 @Data
 class MessageMatcher
 {
-	private static final String DEFAULT_TARGET = "name";
+	static final String DEFAULT_TARGET = "name";
 	/**
 	 * The pattern to match the message against.
 	 * Named groups are used to extract the target from the message.
@@ -32,7 +32,7 @@ class MessageMatcher
 	@SerializedName("is_group")
 	boolean targetIsGroup;
 
-	private MessageMatcher(@NonNull Pattern pattern, @NonNull String target, boolean targetIsGroup)
+	MessageMatcher(@NonNull Pattern pattern, @NonNull String target, boolean targetIsGroup)
 	{
 		this.pattern = pattern;
 		this.target = target;
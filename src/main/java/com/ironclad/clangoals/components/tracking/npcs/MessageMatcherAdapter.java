@@ -0,0 +1,86 @@
+package com.ironclad.clangoals.components.tracking.npcs;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ironclad.clangoals.util.gson.JsonReaders;
+import java.io.IOException;
+import java.util.regex.Pattern;
+import joptsimple.internal.Strings;
+
+/**
+ * Decodes and validates a {@link MessageMatcher}, with the same rules as {@link MessageMatcher#VALIDATOR}.
+ * A missing target falls back to {@value MessageMatcher#DEFAULT_TARGET}.
+ */
+class MessageMatcherAdapter extends TypeAdapter<MessageMatcher>
+{
+	private final TypeAdapter<MessageMatcher> delegate;
+	private final TypeAdapter<Pattern> pattern;
+
+	MessageMatcherAdapter(Gson gson)
+	{
+		this.delegate = gson.getAdapter(MessageMatcher.class);
+		this.pattern = gson.getAdapter(Pattern.class);
+	}
+
+	@Override
+	public void write(JsonWriter out, MessageMatcher value) throws IOException
+	{
+		this.delegate.write(out, value);
+	}
+
+	@Override
+	public MessageMatcher read(JsonReader in) throws IOException
+	{
+		if (JsonReaders.nextNull(in))
+		{
+			throw JsonReaders.invalid(in, "Null message matcher");
+		}
+
+		Pattern pattern = null;
+		String target = MessageMatcher.DEFAULT_TARGET;
+		boolean targetIsGroup = false;
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "pattern":
+					try
+					{
+						pattern = this.pattern.read(in);
+					}
+					catch (RuntimeException e)
+					{
+						// Bad regex or shape, PatternAdapter reports neither with a path
+						throw JsonReaders.invalid(in, "Invalid pattern: " + e.getMessage());
+					}
+					if (pattern == null)
+					{
+						throw JsonReaders.invalid(in, "Null pattern");
+					}
+					break;
+				case "target":
+					target = JsonReaders.nextString(in);
+					if (Strings.isNullOrEmpty(target))
+					{
+						throw JsonReaders.invalid(in, "Empty target");
+					}
+					break;
+				case "is_group":
+					targetIsGroup = in.nextBoolean();
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (pattern == null)
+		{
+			throw JsonReaders.invalid(in, "Missing pattern");
+		}
+		return new MessageMatcher(pattern, target, targetIsGroup);
+	}
+}
@@ -2,7 +2,6 @@ package com.ironclad.clangoals.components.tracking.npcs;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -11,6 +10,8 @@ import com.ironclad.clangoals.components.service.PluginState;
 import com.ironclad.clangoals.components.service.api.ApiService;
 import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
 import com.ironclad.clangoals.components.tracking.AbstractTrackingComponent;
+import com.ironclad.clangoals.components.tracking.ColumnarBatch;
+import com.ironclad.clangoals.components.tracking.NameTable;
 import com.ironclad.clangoals.util.Region;
 import com.ironclad.clangoals.util.WorldUtils;
 import java.time.Duration;
@@ -18,11 +19,13 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 import joptsimple.internal.Strings;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.ChatMessageType;
 import net.runelite.api.Client;
@@ -67,7 +70,7 @@ import net.runelite.client.util.Text;
  */
 @Slf4j
 @Singleton
-public class NPCTrackingComponent extends AbstractTrackingComponent<TrackedNpc, NPCTrackingConfig>
+public class NPCTrackingComponent extends AbstractTrackingComponent<NPCTrackingComponent.Kill, NPCTrackingConfig>
 {
 	private static final EnumSet<ChatMessageType> ALLOWED_CHAT_TYPES = EnumSet.of(ChatMessageType.GAMEMESSAGE, ChatMessageType.SPAM);
 	private static final Set<Integer> RAID_REGIONS = Region.combine(Region.CHAMBERS_OF_XERIC, Region.THEATRE_OF_BLOOD, Region.TOMES_OF_AMASCUT);
@@ -82,7 +85,11 @@ public class NPCTrackingComponent extends AbstractTrackingComponent<TrackedNpc,
 	private final Set<Integer> chatNpcs;
 	private final String endpoint;
 	private final Client client;
-
+	private final NameTable names = new NameTable();
+	/**
+	 * Reused by every flush, flushes of a queue never overlap.
+	 */
+	private final ColumnarBatch staging = new ColumnarBatch("npc_id", null, this.names);
 
 	@Inject
 	public NPCTrackingComponent(ApiService api,
@@ -118,15 +125,16 @@ public class NPCTrackingComponent extends AbstractTrackingComponent<TrackedNpc,
 	}
 
 	@Override
-	protected void onFlush(List<TrackedNpc> pluginNPCS)
+	protected CompletableFuture<Boolean> onFlush(List<Kill> kills)
 	{
 		log.debug("Flushing Npc Queue");
-		this.api.batchUpdateAsync(this.endpoint, pluginNPCS, (item) -> {
-			JsonObject tmp = new JsonObject();
-			tmp.addProperty("npc_id", item.getId());
-			tmp.addProperty("name", item.getName());
-			return tmp;
-		});
+		this.staging.clear();
+		for (Kill kill : kills)
+		{
+			this.staging.add(kill.getNpcId(), 0, kill.getName());
+			this.staging.endRecord();
+		}
+		return this.api.batchUpdateAsync(this.endpoint, this.staging);
 	}
 
 	@Override
@@ -158,7 +166,7 @@ public class NPCTrackingComponent extends AbstractTrackingComponent<TrackedNpc,
 		{
 			case LOGIN_SCREEN:
 			case HOPPING:
-				getQueue().flush();
+				getQueue().flushSpread();
 				this.trackedNpcs.clear();
 				break;
 		}
@@ -377,6 +385,17 @@ public class NPCTrackingComponent extends AbstractTrackingComponent<TrackedNpc,
 			return;
 		}
 
-		getQueue().addItem(npc);
+		Kill kill = new Kill(npc.getId(), this.names.intern(npc.getName()));
+		enqueue(kill, getConfig().isUrgentNpc(kill.getNpcId()));
+	}
+
+	/**
+	 * Queued kill, the name is a {@link NameTable} reference.
+	 */
+	@Value
+	static class Kill
+	{
+		int npcId;
+		int name;
 	}
 }
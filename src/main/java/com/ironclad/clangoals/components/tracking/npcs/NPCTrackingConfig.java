@@ -26,6 +26,11 @@ public class NPCTrackingConfig implements TrackingConfig<NPCTrackingConfig>
 	Set<String> whitelistedRaidNpcs;
 	@SerializedName("loot_only_npcs")
 	Set<Integer> lootOnlyNpcs;
+	/**
+	 * NPC ids whose kills are sent as soon as they are credited.
+	 */
+	@SerializedName("urgent_npcs")
+	Set<Integer> urgentNpcs;
 
 	@Override
 	public void update(NPCTrackingConfig other)
@@ -36,6 +41,7 @@ public class NPCTrackingConfig implements TrackingConfig<NPCTrackingConfig>
 		this.mappings = other.mappings;
 		this.whitelistedRaidNpcs = other.whitelistedRaidNpcs;
 		this.lootOnlyNpcs = other.lootOnlyNpcs;
+		this.urgentNpcs = other.urgentNpcs;
 	}
 
 	@Override
@@ -44,6 +50,11 @@ public class NPCTrackingConfig implements TrackingConfig<NPCTrackingConfig>
 		return this.enabled;
 	}
 
+	public boolean isUrgentNpc(int id)
+	{
+		return this.urgentNpcs != null && this.urgentNpcs.contains(id);
+	}
+
 	public static final NPCTrackingConfig DEFAULT;
 	public static final Predicate<NPCTrackingConfig> VALIDATOR;
 
@@ -72,6 +83,7 @@ public class NPCTrackingConfig implements TrackingConfig<NPCTrackingConfig>
 			.mappings(List.of())
 			.whitelistedRaidNpcs(Set.of())
 			.lootOnlyNpcs(Set.of())
+			.urgentNpcs(Set.of())
 			.build();
 	}
 }
@@ -0,0 +1,99 @@
+package com.ironclad.clangoals.components.tracking.npcs;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ironclad.clangoals.components.service.config.dto.QueueConfig;
+import com.ironclad.clangoals.util.gson.JsonReaders;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decodes and validates an {@link NPCTrackingConfig} in one pass, with the same rules as {@link NPCTrackingConfig#VALIDATOR}.
+ */
+public class NPCTrackingConfigAdapter extends TypeAdapter<NPCTrackingConfig>
+{
+	private final TypeAdapter<NPCTrackingConfig> delegate;
+	private final TypeAdapter<QueueConfig> queue;
+	private final TypeAdapter<Integer> integer;
+	private final TypeAdapter<String> string;
+	private final MessageMatcherAdapter matcher;
+	private final MappingAdapter mapping;
+
+	public NPCTrackingConfigAdapter(Gson gson, TypeAdapter<NPCTrackingConfig> delegate)
+	{
+		this.delegate = delegate;
+		this.queue = gson.getAdapter(QueueConfig.class);
+		this.integer = gson.getAdapter(Integer.class);
+		this.string = gson.getAdapter(String.class);
+		this.matcher = new MessageMatcherAdapter(gson);
+		this.mapping = new MappingAdapter(gson);
+	}
+
+	@Override
+	public void write(JsonWriter out, NPCTrackingConfig value) throws IOException
+	{
+		this.delegate.write(out, value);
+	}
+
+	@Override
+	public NPCTrackingConfig read(JsonReader in) throws IOException
+	{
+		if (JsonReaders.nextNull(in))
+		{
+			return null;
+		}
+
+		NPCTrackingConfig.NPCTrackingConfigBuilder config = NPCTrackingConfig.builder();
+		QueueConfig queueConfig = null;
+		List<MessageMatcher> matchers = null;
+		List<Mapping> mappings = null;
+		Set<String> raidWhitelist = null;
+		Set<Integer> lootOnly = null;
+		in.beginObject();
+		while (in.hasNext())
+		{
+			switch (in.nextName())
+			{
+				case "enabled":
+					config.enabled(in.nextBoolean());
+					break;
+				case "batch_config":
+					queueConfig = JsonReaders.readValid(in, this.queue, QueueConfig.VALIDATOR);
+					break;
+				case "message_matchers":
+					matchers = JsonReaders.readList(in, this.matcher);
+					break;
+				case "mappings":
+					mappings = JsonReaders.readList(in, this.mapping);
+					break;
+				case "raid_whitelist":
+					raidWhitelist = JsonReaders.readSet(in, this.string);
+					break;
+				case "loot_only_npcs":
+					lootOnly = JsonReaders.readSet(in, this.integer);
+					break;
+				case "urgent_npcs":
+					config.urgentNpcs(JsonReaders.readSet(in, this.integer));
+					break;
+				default:
+					in.skipValue();
+			}
+		}
+		in.endObject();
+
+		if (queueConfig == null || matchers == null || mappings == null || raidWhitelist == null || lootOnly == null)
+		{
+			throw JsonReaders.invalid(in, "Incomplete npc tracking config");
+		}
+		return config
+			.queueConfig(queueConfig)
+			.messageMatchers(matchers)
+			.mappings(mappings)
+			.whitelistedRaidNpcs(raidWhitelist)
+			.lootOnlyNpcs(lootOnly)
+			.build();
+	}
+}
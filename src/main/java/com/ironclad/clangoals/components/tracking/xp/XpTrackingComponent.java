@@ -1,6 +1,5 @@
 package com.ironclad.clangoals.components.tracking.xp;
 
-import com.google.gson.JsonObject;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -10,7 +9,9 @@ import com.ironclad.clangoals.components.service.api.ApiService;
 import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
 import com.ironclad.clangoals.components.tracking.AbstractTrackingComponent;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Client;
 import net.runelite.api.Skill;
@@ -57,16 +58,22 @@ public class XpTrackingComponent extends AbstractTrackingComponent<StatChanged,
 		super.onComponentStop(state);
 	}
 
-	protected void onFlush(List<StatChanged> items){
+	protected CompletableFuture<Boolean> onFlush(List<StatChanged> items){
 		log.debug("Flushing Xp Queue");
-		this.api.batchUpdateAsync(this.endpoint, items, (item) ->
-		{
-			JsonObject tmp = new JsonObject();
-			tmp.addProperty("skill", item.getSkill().getName().toLowerCase());
-			tmp.addProperty("xp", item.getXp());
+		return this.api.batchUpdateAsync(this.endpoint, items, (item, out) -> out
+			.beginRow()
+			.field("skill", item.getSkill().getName().toLowerCase())
+			.field("xp", item.getXp())
+			.endRow());
+	}
 
-			return tmp;
-		});
+	/**
+	 * Only the latest xp of each skill is sent.
+	 */
+	@Override
+	protected Function<StatChanged, ?> key()
+	{
+		return StatChanged::getSkill;
 	}
 
 	@Override
@@ -94,7 +101,7 @@ public class XpTrackingComponent extends AbstractTrackingComponent<StatChanged,
 		{
 			case LOGIN_SCREEN:
 			case HOPPING:
-				getQueue().flush();
+				getQueue().flushSpread();
 			case LOGGING_IN:
 				this.requiresInit = true;
 				break;
@@ -130,7 +137,7 @@ public class XpTrackingComponent extends AbstractTrackingComponent<StatChanged,
 			return;
 		}
 		log.debug("Xp added: {} XP: {}", skill.getName(), newXp);
-		getQueue().addItem(e);
+		enqueue(e);
 		this.xpMap.put(skill, newXp);
 	}
 }
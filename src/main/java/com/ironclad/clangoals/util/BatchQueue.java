@@ -1,30 +1,132 @@
 package com.ironclad.clangoals.util;
 
+import com.ironclad.clangoals.components.service.config.dto.QueueConfig;
+import com.ironclad.clangoals.util.queue.AdaptiveSchedule;
+import com.ironclad.clangoals.util.queue.Admission;
+import com.ironclad.clangoals.util.queue.DrainResult;
+import com.ironclad.clangoals.util.queue.FlushMode;
+import com.ironclad.clangoals.util.queue.KeyedStorage;
+import com.ironclad.clangoals.util.queue.LinkedStorage;
+import com.ironclad.clangoals.util.queue.OverflowPolicy;
+import com.ironclad.clangoals.util.queue.QueueStorage;
+import com.ironclad.clangoals.util.queue.RingBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
+import lombok.Builder;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public final class BatchQueue<T>
 {
+	static final long DEFAULT_DRAIN_TIMEOUT = 2000;
+	static final long DEFAULT_TARGET_LATENCY = 2000;
+	static final int DEFAULT_MAX_IN_FLIGHT = 1;
+	static final long DEFAULT_URGENT_DELAY = 100;
+
 	private ScheduledExecutorService executor;
-	private ScheduledFuture<?> scheduledFuture;
-	private final ConcurrentLinkedQueue<T> queue;
-	private final int limit;
-	private final AtomicInteger itemCount;
+	private volatile ScheduledFuture<?> scheduledFuture;
+	private volatile QueueStorage<T> storage;
+	private volatile int limit;
+	/**
+	 * S between flush attempts.
+	 */
+	private volatile long interval;
+	/**
+	 * Replaces the fixed interval and limit when using {@link FlushMode#ADAPTIVE}, otherwise null.
+	 */
+	private volatile AdaptiveSchedule adaptive;
+	private volatile OverflowPolicy overflow;
+	/**
+	 * Copy of the settings currently applied.
+	 */
+	private QueueConfig config;
+	/**
+	 * Merges overflowing items when using {@link OverflowPolicy#COALESCE}.
+	 * May be called more than once for the same pair, must be side effect free.
+	 */
+	private final BinaryOperator<T> merger;
+	private final Function<? super T, ?> key;
+	private final AtomicReference<T> coalesced = new AtomicReference<>();
+	/**
+	 * Uploads a batch, completing with true once it has been delivered.
+	 */
+	private final Function<List<T>, CompletableFuture<Boolean>> onFlush;
+	/**
+	 * Uploads which have not completed yet, and the number of items in each.
+	 */
+	private final Map<CompletableFuture<Boolean>, Integer> inFlight = new ConcurrentHashMap<>();
+	/**
+	 * MS to wait for in flight uploads during shutdown.
+	 */
+	private volatile long drainTimeout;
+	/**
+	 * Maximum number of uploads started by this queue that may be outstanding at once.
+	 */
+	private volatile int maxInFlight;
+	/**
+	 * MS between an urgent item arriving and the flush carrying it.
+	 */
+	private volatile long urgentDelay;
+	/**
+	 * MS range of the per client phase offset added to timed and spread flushes, 0 for none.
+	 */
+	private volatile long phaseSpread;
+	/**
+	 * MS range of the random delay added to timed and spread flushes, 0 for none.
+	 */
+	private volatile long jitter;
+	/**
+	 * Seed for the phase offset, stable per client such as the account hash.
+	 */
+	private final LongSupplier phaseSeed;
+
+	/**
+	 * Guards draining and serialization, so batches are cut and handed to {@link #onFlush} one at a time and in order.
+	 */
+	private final Object flushLock = new Object();
+	/**
+	 * Drained batches waiting for an upload slot, guarded by {@link #flushLock}.
+	 */
+	private final Deque<List<T>> ready = new ArrayDeque<>();
+	/**
+	 * Uploads started and not yet completed, guarded by {@link #flushLock}.
+	 */
+	private int uploading;
+	/**
+	 * Set while a flush is queued on the executor, further requests join it.
+	 */
+	private final AtomicBoolean flushQueued = new AtomicBoolean();
 	/**
-	 * MS between flush attempts.
+	 * Set while an urgent flush is scheduled, later urgent items ride along with it.
 	 */
-	private final long interval;
-	private final Consumer<List<T>> onFlush;
+	private final AtomicBoolean urgentQueued = new AtomicBoolean();
+	/**
+	 * Set while a timed flush is scheduled.
+	 */
+	private final AtomicBoolean armed = new AtomicBoolean();
+	/**
+	 * Identifies the current timed flush, stale ticks do nothing.
+	 */
+	private volatile int generation;
+	private volatile boolean suspended;
 
 	private final AtomicBoolean isShutdown = new AtomicBoolean(true);
 
@@ -32,17 +134,181 @@ public final class BatchQueue<T>
 	 * @param itemLimit Flush when items reach this amount. -1 to disable.
 	 * @param interval  S, The interval between flush attempts.
 	 */
-	public BatchQueue(int itemLimit, long interval, Consumer<List<T>> onFlush)
+	public BatchQueue(int itemLimit, long interval, Function<List<T>, CompletableFuture<Boolean>> onFlush)
+	{
+		this(QueueConfig.builder().size(itemLimit).interval(interval).build(), null, null, null, onFlush);
+	}
+
+	/**
+	 * @param config  Size, interval and storage settings. Values are copied.
+	 * @param merger  Optional merge function for {@link OverflowPolicy#COALESCE}.
+	 * @param key       Optional key function, a newer item replaces the pending item with the same key.
+	 * @param phaseSeed Optional seed for the per client phase offset, read each time a flush is scheduled.
+	 * @param onFlush   Uploads flushed batches.
+	 */
+	@Builder
+	private BatchQueue(@NonNull QueueConfig config, BinaryOperator<T> merger, Function<? super T, ?> key, LongSupplier phaseSeed, @NonNull Function<List<T>, CompletableFuture<Boolean>> onFlush)
+	{
+		this.merger = merger;
+		this.key = key;
+		this.phaseSeed = phaseSeed;
+		this.onFlush = onFlush;
+		apply(config);
+	}
+
+	/**
+	 * Apply new settings in place, keeping pending items and in flight uploads.
+	 * <p>
+	 * Settings equal to the current ones are ignored.
+	 * A changed capacity moves pending items into new storage,
+	 * a changed schedule replaces the pending flush.
+	 *
+	 * @param config New settings. Values are copied.
+	 * @return false if nothing changed.
+	 */
+	public boolean reconfigure(@NonNull QueueConfig config)
 	{
-		if (interval <= 0)
+		synchronized (this.flushLock)
+		{
+			if (config.equals(this.config))
+			{
+				return false;
+			}
+			log.debug("Reconfiguring BatchQueue {}", config);
+			QueueConfig previous = this.config;
+			apply(config);
+			if (!sameSchedule(previous, config))
+			{
+				disarm();
+				arm();
+			}
+		}
+		dispatch();
+		return true;
+	}
+
+	private void apply(QueueConfig config)
+	{
+		if (config.getInterval() <= 0)
 		{
 			throw new IllegalArgumentException("Interval must be positive.");
 		}
-		this.queue = new ConcurrentLinkedQueue<>();
-		this.limit = itemLimit;
-		this.interval = interval;
-		this.onFlush = onFlush;
-		this.itemCount = new AtomicInteger(0);
+		QueueConfig previous = this.config;
+		if (previous == null || previous.getCapacity() != config.getCapacity())
+		{
+			migrate(this.key != null
+				? new KeyedStorage<>(this.key, config.getCapacity())
+				: config.getCapacity() > 0 ? new RingBuffer<>(config.getCapacity()) : new LinkedStorage<>());
+		}
+		if (previous == null || !sameSchedule(previous, config))
+		{
+			this.adaptive = config.getMode() == FlushMode.ADAPTIVE ? adaptiveSchedule(config) : null;
+		}
+		this.limit = config.getSize();
+		this.interval = config.getInterval();
+		this.overflow = config.getOverflow() == null ? OverflowPolicy.SPILL : config.getOverflow();
+		this.drainTimeout = config.getDrainTimeout() > 0 ? config.getDrainTimeout() : DEFAULT_DRAIN_TIMEOUT;
+		this.maxInFlight = config.getMaxInFlight() > 0 ? config.getMaxInFlight() : DEFAULT_MAX_IN_FLIGHT;
+		this.urgentDelay = config.getUrgentDelay() > 0 ? config.getUrgentDelay() : DEFAULT_URGENT_DELAY;
+		this.phaseSpread = Math.max(0, config.getPhaseSpread());
+		this.jitter = Math.max(0, config.getJitter());
+		this.config = config.toBuilder().build();
+	}
+
+	/**
+	 * Swap in new storage, moving pending items across.
+	 * Callers must hold {@link #flushLock}.
+	 */
+	private void migrate(QueueStorage<T> next)
+	{
+		QueueStorage<T> old = this.storage;
+		this.storage = next;
+		if (old != null)
+		{
+			transfer(old);
+		}
+	}
+
+	/**
+	 * Move the items of replaced storage into the current one.
+	 * Items that don't fit are cut into a batch ahead of them.
+	 * Callers must hold {@link #flushLock}.
+	 *
+	 * @return false if nothing was moved.
+	 */
+	private boolean transfer(QueueStorage<T> old)
+	{
+		List<T> overflowed = new ArrayList<>();
+		boolean moved = false;
+		T item;
+		while ((item = old.poll()) != null)
+		{
+			moved = true;
+			if (!this.storage.offer(item))
+			{
+				overflowed.add(item);
+			}
+		}
+		if (!overflowed.isEmpty())
+		{
+			// Keep order, the overflow is newer than anything in the new storage
+			List<T> batch = drain();
+			batch.addAll(overflowed);
+			this.ready.add(batch);
+		}
+		return moved;
+	}
+
+	/**
+	 * Move items an add raced into storage that {@link #migrate} replaced meanwhile.
+	 * They land behind the items already moved.
+	 */
+	private void rescue(QueueStorage<T> old)
+	{
+		boolean moved;
+		synchronized (this.flushLock)
+		{
+			moved = transfer(old);
+		}
+		if (moved && !this.isShutdown.get())
+		{
+			log.debug("Moved items added during a storage swap");
+			this.executor.execute(this::dispatch);
+		}
+	}
+
+	private static boolean sameSchedule(QueueConfig a, QueueConfig b)
+	{
+		return a.getMode() == b.getMode()
+			&& a.getInterval() == b.getInterval()
+			&& a.getSize() == b.getSize()
+			&& a.getCapacity() == b.getCapacity()
+			&& a.getMinInterval() == b.getMinInterval()
+			&& a.getMaxInterval() == b.getMaxInterval()
+			&& a.getMinSize() == b.getMinSize()
+			&& a.getMaxSize() == b.getMaxSize()
+			&& a.getTargetLatency() == b.getTargetLatency();
+	}
+
+	private static AdaptiveSchedule adaptiveSchedule(QueueConfig config)
+	{
+		long maxInterval = config.getMaxInterval() > 0 ? config.getMaxInterval() : config.getInterval() * 2;
+		long minInterval = Math.min(maxInterval, config.getMinInterval() > 0 ? config.getMinInterval() : Math.max(1, config.getInterval() / 4));
+		int size = Math.max(1, config.getSize());
+		int maxSize = config.getMaxSize() > 0 ? config.getMaxSize() : size * 2;
+		int minSize = Math.min(maxSize, config.getMinSize() > 0 ? config.getMinSize() : Math.max(1, size / 4));
+		if (config.getCapacity() > 0)
+		{
+			maxSize = Math.max(minSize, Math.min(maxSize, config.getCapacity()));
+		}
+		return new AdaptiveSchedule(
+			TimeUnit.SECONDS.toMillis(minInterval),
+			TimeUnit.SECONDS.toMillis(maxInterval),
+			minSize,
+			maxSize,
+			size,
+			config.getTargetLatency() > 0 ? config.getTargetLatency() : DEFAULT_TARGET_LATENCY,
+			System.currentTimeMillis());
 	}
 
 	public void start(ScheduledExecutorService executor)
@@ -51,30 +317,240 @@ public final class BatchQueue<T>
 		if (this.isShutdown.compareAndSet(true, false))
 		{
 			this.executor = executor;
-			this.scheduledFuture = executor.scheduleWithFixedDelay(this::runFlush, this.interval, this.interval, TimeUnit.SECONDS);
+			arm();
 		}
 	}
 
 	/**
-	 * Flush, then shutdown the queues scheduled executor.
+	 * Stop timed flushes until {@link #resume()}, for example while logged out.
+	 * Items are still accepted, explicit and urgent flushes still run.
 	 */
-	public void shutdown()
+	public void suspend()
+	{
+		this.suspended = true;
+		disarm();
+	}
+
+	public void resume()
 	{
-		if (this.isShutdown.compareAndSet(false, true))
+		this.suspended = false;
+		arm();
+	}
+
+	/**
+	 * Schedule a one shot flush if items are waiting and none is scheduled yet.
+	 * An empty queue has no timer.
+	 */
+	private void arm()
+	{
+		if (this.isShutdown.get() || this.suspended || size() == 0 || !this.armed.compareAndSet(false, true))
 		{
-			log.debug("Shutting down BatchQueue");
-			flush();
-			this.scheduledFuture.cancel(true);
+			return;
+		}
+		synchronized (this.flushLock)
+		{
+			int generation = this.generation;
+			long delay = (this.adaptive != null ? this.adaptive.nextInterval() : TimeUnit.SECONDS.toMillis(this.interval)) + spread();
+			this.scheduledFuture = this.executor.schedule(() -> tick(generation), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Cancel the scheduled flush, a tick already running for it will not schedule another.
+	 */
+	private void disarm()
+	{
+		synchronized (this.flushLock)
+		{
+			this.generation++;
+			if (this.scheduledFuture != null)
+			{
+				this.scheduledFuture.cancel(false);
+				this.scheduledFuture = null;
+			}
+			this.armed.set(false);
+		}
+	}
+
+	private void tick(int generation)
+	{
+		if (generation != this.generation)
+		{
+			return;
+		}
+		runFlush();
+		synchronized (this.flushLock)
+		{
+			// Disarmed or rescheduled during the flush
+			if (generation != this.generation)
+			{
+				return;
+			}
+			this.armed.set(false);
+		}
+		// Items added during the flush saw the old deadline
+		arm();
+	}
+
+	/**
+	 * Stop accepting items, send everything still queued,
+	 * and wait up to the drain timeout for outstanding uploads.
+	 * <p>
+	 * Returns straight away, the remaining items are serialized on the queues executor,
+	 * or on the calling thread if the executor no longer runs tasks.
+	 *
+	 * @return Completes once every upload finished, or the drain timeout passed.
+	 */
+	public CompletableFuture<DrainResult> shutdown()
+	{
+		if (!this.isShutdown.compareAndSet(false, true))
+		{
+			return CompletableFuture.completedFuture(DrainResult.EMPTY);
+		}
+
+		log.debug("Shutting down BatchQueue");
+		disarm();
+
+		CompletableFuture<Map<CompletableFuture<Boolean>, Integer>> drained;
+		try
+		{
+			drained = CompletableFuture.supplyAsync(this::sendRemaining, this.executor);
 		}
+		catch (RejectedExecutionException e)
+		{
+			drained = CompletableFuture.completedFuture(sendRemaining());
+		}
+
+		return drained.thenCompose(outstanding -> CompletableFuture.allOf(outstanding.keySet().toArray(new CompletableFuture[0]))
+			.handle((v, e) -> tally(outstanding))
+			.completeOnTimeout(null, this.drainTimeout, TimeUnit.MILLISECONDS)
+			.thenApply(result -> result != null ? result : tally(outstanding)));
 	}
 
+	/**
+	 * Send everything left, regardless of the in flight limit.
+	 *
+	 * @return Every outstanding upload with its item count.
+	 */
+	private Map<CompletableFuture<Boolean>, Integer> sendRemaining()
+	{
+		synchronized (this.flushLock)
+		{
+			Map<CompletableFuture<Boolean>, Integer> outstanding = new HashMap<>(this.inFlight);
+			cut();
+			List<T> batch;
+			while ((batch = this.ready.poll()) != null)
+			{
+				CompletableFuture<Boolean> upload = deliver(batch);
+				outstanding.put(upload == null ? CompletableFuture.completedFuture(false) : upload, batch.size());
+			}
+			return outstanding;
+		}
+	}
+
+	/**
+	 * Request a flush on the executor.
+	 * Requests made while one is already queued are merged into it.
+	 */
 	public void flush()
 	{
-		if(this.isShutdown.get())
+		if (this.isShutdown.get() || !this.flushQueued.compareAndSet(false, true))
+		{
+			return;
+		}
+		this.executor.execute(() ->
+		{
+			this.flushQueued.set(false);
+			runFlush();
+		});
+	}
+
+	private void flushUrgent()
+	{
+		if (!this.urgentQueued.compareAndSet(false, true))
+		{
+			return;
+		}
+		this.executor.schedule(() ->
+		{
+			this.urgentQueued.set(false);
+			runFlush();
+		}, this.urgentDelay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Flush now if the timed flush is due within {@code window}, so its batch can join an upload starting now.
+	 * The timer is left as it is, nothing is flushed ahead of the interval or size limit otherwise.
+	 *
+	 * @param window MS
+	 */
+	public void flushDue(long window)
+	{
+		ScheduledFuture<?> scheduled = this.scheduledFuture;
+		if (scheduled != null && scheduled.getDelay(TimeUnit.MILLISECONDS) <= window)
+		{
+			flush();
+		}
+	}
+
+	/**
+	 * Request a flush after this clients phase offset and a random jitter.
+	 * Meant for flushes every client triggers at the same moment, such as world hops and logging out.
+	 */
+	public void flushSpread()
+	{
+		long delay = spread();
+		if (delay == 0)
 		{
+			flush();
 			return;
 		}
-		this.executor.execute(this::runFlush);
+		if (this.isShutdown.get() || !this.flushQueued.compareAndSet(false, true))
+		{
+			return;
+		}
+		this.executor.schedule(() ->
+		{
+			this.flushQueued.set(false);
+			runFlush();
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return MS, deterministic phase offset plus random jitter.
+	 */
+	private long spread()
+	{
+		long delay = 0;
+		long phaseSpread = this.phaseSpread;
+		if (phaseSpread > 0 && this.phaseSeed != null)
+		{
+			delay += Math.floorMod(mix(this.phaseSeed.getAsLong()), phaseSpread);
+		}
+		long jitter = this.jitter;
+		if (jitter > 0)
+		{
+			delay += ThreadLocalRandom.current().nextLong(jitter);
+		}
+		return delay;
+	}
+
+	/**
+	 * SplitMix64 finalizer, spreads similar seeds evenly.
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return Number of items waiting to be flushed, not counting batches already cut and waiting for an upload slot.
+	 */
+	public int size()
+	{
+		return this.storage.size() + (this.coalesced.get() == null ? 0 : 1);
 	}
 
 	/**
@@ -82,29 +558,138 @@ public final class BatchQueue<T>
 	 */
 	private void runFlush()
 	{
-		if (this.itemCount.get() == 0)
+		int items;
+		synchronized (this.flushLock)
 		{
-			return;
+			items = cut();
 		}
 
-		List<T> snapshot = new ArrayList<>();
+		if (this.adaptive != null)
+		{
+			this.adaptive.onFlush(items, System.currentTimeMillis());
+		}
+
+		dispatch();
+	}
+
+	/**
+	 * Drain the storage into a batch at the back of the ready queue.
+	 * Callers must hold {@link #flushLock}.
+	 *
+	 * @return Number of items in the new batch.
+	 */
+	private int cut()
+	{
+		List<T> batch = drain();
+		if (!batch.isEmpty())
+		{
+			this.ready.add(batch);
+		}
+		return batch.size();
+	}
+
+	/**
+	 * Start uploads for ready batches, oldest first, while upload slots are free.
+	 */
+	private void dispatch()
+	{
+		synchronized (this.flushLock)
+		{
+			while (this.uploading < this.maxInFlight && !this.ready.isEmpty())
+			{
+				List<T> batch = this.ready.poll();
+				CompletableFuture<Boolean> upload = deliver(batch);
+				if (upload != null)
+				{
+					this.uploading++;
+					upload.whenComplete((ok, e) -> onUploadComplete());
+				}
+			}
+		}
+	}
+
+	private void onUploadComplete()
+	{
+		boolean more;
+		synchronized (this.flushLock)
+		{
+			this.uploading--;
+			more = !this.ready.isEmpty();
+		}
+		// Never dispatch inline, the upload may complete on the thread which started it
+		if (more && !this.isShutdown.get())
+		{
+			this.executor.execute(this::dispatch);
+		}
+	}
+
+	private List<T> drain()
+	{
+		List<T> snapshot = new ArrayList<>(this.storage.size());
 
 		T item;
-		while ((item = this.queue.poll()) != null)
+		while ((item = this.storage.poll()) != null)
 		{
 			snapshot.add(item);
 		}
 
-		this.itemCount.set(0);
+		T merged = this.coalesced.getAndSet(null);
+		if (merged != null)
+		{
+			snapshot.add(merged);
+		}
+
+		return snapshot;
+	}
 
+	/**
+	 * @return The upload, or null if the batch could not be handed over.
+	 */
+	private CompletableFuture<Boolean> deliver(List<T> batch)
+	{
+		long start = System.nanoTime();
+		CompletableFuture<Boolean> upload;
 		try
 		{
-			this.onFlush.accept(snapshot);
+			upload = this.onFlush.apply(batch);
 		}
 		catch (Exception e)
 		{
 			log.error("Error during flush", e);
+			return null;
 		}
+
+		if (upload != null && !upload.isDone())
+		{
+			this.inFlight.put(upload, batch.size());
+			upload.whenComplete((ok, e) -> this.inFlight.remove(upload));
+		}
+		if (upload != null && this.adaptive != null)
+		{
+			upload.whenComplete((ok, e) -> this.adaptive.onUpload(
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+				e == null && Boolean.TRUE.equals(ok)));
+		}
+		return upload;
+	}
+
+	private static DrainResult tally(Map<CompletableFuture<Boolean>, Integer> uploads)
+	{
+		int delivered = 0;
+		int abandoned = 0;
+		for (Map.Entry<CompletableFuture<Boolean>, Integer> e : uploads.entrySet())
+		{
+			CompletableFuture<Boolean> upload = e.getKey();
+			if (upload.isDone() && !upload.isCompletedExceptionally() && Boolean.TRUE.equals(upload.join()))
+			{
+				delivered += e.getValue();
+			}
+			else
+			{
+				abandoned += e.getValue();
+			}
+		}
+		return new DrainResult(delivered, abandoned);
 	}
 
 	/**
@@ -112,23 +697,95 @@ public final class BatchQueue<T>
 	 * <p>
 	 * Once the limit is hit then
 	 * snapshot and flush items.
+	 * If the queue is at capacity the configured {@link OverflowPolicy} decides the outcome.
 	 *
 	 * @param item Item to push to the queue.
+	 * @return What happened to the item.
 	 */
-	public void addItem(T item)
+	public Admission addItem(T item)
 	{
-		if (item == null || this.isShutdown.get())
+		return addItem(item, false);
+	}
+
+	/**
+	 * Pushes an item to the queue.
+	 * <p>
+	 * Urgent items don't wait for the interval or size limit,
+	 * they are flushed within the urgent delay together with everything else pending.
+	 *
+	 * @param item   Item to push to the queue.
+	 * @param urgent Whether the item should be sent straight away.
+	 * @return What happened to the item.
+	 */
+	public Admission addItem(T item, boolean urgent)
+	{
+		if (item == null)
 		{
-			return;
+			return Admission.REJECTED;
 		}
 
-		this.queue.add(item);
+		if (this.isShutdown.get())
+		{
+			return Admission.CLOSED;
+		}
+
+		QueueStorage<T> storage = this.storage;
+		Admission result = storage.offer(item) ? Admission.ACCEPTED : overflow(storage, item);
+		if (storage != this.storage)
+		{
+			// Reconfigured meanwhile, the item may be in storage nothing drains
+			rescue(storage);
+		}
 
-		int curr = this.itemCount.incrementAndGet();
+		arm();
 
-		if (this.limit > 0 && curr >= this.limit)
+		int limit = sizeLimit();
+		if (result.isAccepted() && urgent)
+		{
+			flushUrgent();
+		}
+		else if (result.isAccepted() && limit > 0 && this.storage.size() >= limit)
 		{
 			this.flush();
 		}
+
+		return result;
+	}
+
+	private int sizeLimit()
+	{
+		return this.adaptive != null ? this.adaptive.sizeLimit() : this.limit;
+	}
+
+	private Admission overflow(QueueStorage<T> storage, T item)
+	{
+		switch (this.overflow)
+		{
+			case DROP_OLDEST:
+				storage.poll();
+				return storage.offer(item) ? Admission.EVICTED_OLDEST : Admission.REJECTED;
+			case DROP_NEWEST:
+				return Admission.REJECTED;
+			case COALESCE:
+				if (this.merger != null)
+				{
+					this.coalesced.accumulateAndGet(item, (pending, next) -> pending == null ? next : this.merger.apply(pending, next));
+					return Admission.COALESCED;
+				}
+				// no merger, spill instead
+			case SPILL:
+			default:
+				int spilled;
+				synchronized (this.flushLock)
+				{
+					spilled = cut();
+				}
+				if (spilled > 0)
+				{
+					log.debug("BatchQueue full, spilling {} items", spilled);
+					this.executor.execute(this::dispatch);
+				}
+				return storage.offer(item) ? Admission.SPILLED : Admission.REJECTED;
+		}
 	}
 }
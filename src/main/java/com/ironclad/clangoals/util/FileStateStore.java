@@ -0,0 +1,88 @@
+package com.ironclad.clangoals.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.Properties;
+import javax.annotation.Nullable;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link StateStore} kept in a properties file of its own, outside the RuneLite profile.
+ * <p>
+ * Values are held in memory. Changes rewrite the file through a temporary copy, so a crash leaves the old or the new file.
+ * Thread safe, writes block the caller.
+ */
+@Slf4j
+public class FileStateStore implements StateStore
+{
+	private final Path file;
+	private final Properties values = new Properties();
+
+	public FileStateStore(@NonNull Path file)
+	{
+		this.file = file;
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			this.values.load(reader);
+		}
+		catch (NoSuchFileException e)
+		{
+			log.debug("No state file at {}", file);
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			log.warn("Unable to read state file {}", file, e);
+		}
+	}
+
+	@Nullable
+	@Override
+	public synchronized String get(String key)
+	{
+		return this.values.getProperty(key);
+	}
+
+	@Override
+	public synchronized void set(String key, @Nullable String value)
+	{
+		if (Objects.equals(value, this.values.getProperty(key)))
+		{
+			return;
+		}
+		if (value == null)
+		{
+			this.values.remove(key);
+		}
+		else
+		{
+			this.values.setProperty(key, value);
+		}
+		save();
+	}
+
+	private void save()
+	{
+		Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+		try
+		{
+			Files.createDirectories(this.file.getParent());
+			try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8))
+			{
+				this.values.store(writer, null);
+			}
+			Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			log.warn("Unable to write state file {}", this.file, e);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.ironclad.clangoals.util;
+
+import javax.annotation.Nullable;
+
+/**
+ * Small values kept across sessions.
+ * Backed by a file next to the spool, see {@link FileStateStore}.
+ */
+public interface StateStore
+{
+	@Nullable
+	String get(String key);
+
+	/**
+	 * @param value null to remove the key.
+	 */
+	void set(String key, @Nullable String value);
+}
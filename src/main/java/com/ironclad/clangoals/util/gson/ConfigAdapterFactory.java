@@ -0,0 +1,39 @@
+package com.ironclad.clangoals.util.gson;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
+import com.ironclad.clangoals.components.service.config.dto.RemoteConfigAdapter;
+import com.ironclad.clangoals.components.tracking.loot.ItemTrackingConfig;
+import com.ironclad.clangoals.components.tracking.loot.ItemTrackingConfigAdapter;
+import com.ironclad.clangoals.components.tracking.npcs.NPCTrackingConfig;
+import com.ironclad.clangoals.components.tracking.npcs.NPCTrackingConfigAdapter;
+
+/**
+ * Streaming, validating adapters for the remote config.
+ * Configs are still written reflectively.
+ */
+public class ConfigAdapterFactory implements TypeAdapterFactory
+{
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+	{
+		Class<? super T> raw = type.getRawType();
+		if (raw == RemoteConfig.class)
+		{
+			return (TypeAdapter<T>) new RemoteConfigAdapter(gson, (TypeAdapter<RemoteConfig>) gson.getDelegateAdapter(this, type));
+		}
+		if (raw == ItemTrackingConfig.class)
+		{
+			return (TypeAdapter<T>) new ItemTrackingConfigAdapter(gson, (TypeAdapter<ItemTrackingConfig>) gson.getDelegateAdapter(this, type));
+		}
+		if (raw == NPCTrackingConfig.class)
+		{
+			return (TypeAdapter<T>) new NPCTrackingConfigAdapter(gson, (TypeAdapter<NPCTrackingConfig>) gson.getDelegateAdapter(this, type));
+		}
+		return null;
+	}
+}
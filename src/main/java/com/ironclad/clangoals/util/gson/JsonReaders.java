@@ -0,0 +1,93 @@
+package com.ironclad.clangoals.util.gson;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Helpers for the streaming config adapters.
+ * Values are validated as soon as they are read, the first invalid one stops decoding.
+ */
+@UtilityClass
+public class JsonReaders
+{
+	/**
+	 * @return Exception naming the readers current path.
+	 */
+	public JsonParseException invalid(JsonReader in, String reason)
+	{
+		return new JsonParseException(reason + " at " + in.getPath());
+	}
+
+	/**
+	 * Consume a null if one is next.
+	 *
+	 * @return true if the value was null.
+	 */
+	public boolean nextNull(JsonReader in) throws IOException
+	{
+		if (in.peek() == JsonToken.NULL)
+		{
+			in.nextNull();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Read a value that must be present and pass the validator.
+	 */
+	public <T> T readValid(JsonReader in, TypeAdapter<T> adapter, Predicate<? super T> validator) throws IOException
+	{
+		T value = adapter.read(in);
+		if (value == null || !validator.test(value))
+		{
+			throw invalid(in, "Invalid value");
+		}
+		return value;
+	}
+
+	/**
+	 * @return null for a json null.
+	 */
+	public String nextString(JsonReader in) throws IOException
+	{
+		return nextNull(in) ? null : in.nextString();
+	}
+
+	/**
+	 * @return null for a json null.
+	 */
+	public <T> List<T> readList(JsonReader in, TypeAdapter<T> element) throws IOException
+	{
+		if (nextNull(in))
+		{
+			return null;
+		}
+		List<T> list = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext())
+		{
+			list.add(element.read(in));
+		}
+		in.endArray();
+		return list;
+	}
+
+	/**
+	 * @return null for a json null.
+	 */
+	public <T> Set<T> readSet(JsonReader in, TypeAdapter<T> element) throws IOException
+	{
+		List<T> list = readList(in, element);
+		return list == null ? null : new HashSet<>(list);
+	}
+}
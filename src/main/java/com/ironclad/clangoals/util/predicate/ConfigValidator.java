@@ -1,13 +1,19 @@
 package com.ironclad.clangoals.util.predicate;
 
+import com.ironclad.clangoals.components.service.config.dto.ApiConfig;
 import com.ironclad.clangoals.components.service.config.dto.RemoteConfig;
 import com.ironclad.clangoals.components.tracking.loot.ItemTrackingConfig;
 import com.ironclad.clangoals.components.tracking.npcs.NPCTrackingConfig;
 import com.ironclad.clangoals.components.tracking.xp.XpTrackingConfig;
+import com.ironclad.clangoals.util.IronClad;
 import java.util.function.Predicate;
 import lombok.RequiredArgsConstructor;
 
-//TODO I probably should change all this nonsense to a custom Type Adapter, but im lazy
+/**
+ * Checks configs built in code.
+ * Configs decoded with the {@link IronClad} gson are checked with the same rules while decoding,
+ * see {@link com.ironclad.clangoals.util.gson.ConfigAdapterFactory}.
+ */
 @RequiredArgsConstructor
 public class ConfigValidator implements Predicate<RemoteConfig>
 {
@@ -41,6 +47,11 @@ public class ConfigValidator implements Predicate<RemoteConfig>
 			return false;
 		}
 
+		if(pluginConfig.getApiConfig() != null && !ApiConfig.VALIDATOR.test(pluginConfig.getApiConfig()))
+		{
+			return false;
+		}
+
 		return NPCTrackingConfig.VALIDATOR.test(pluginConfig.getNpcTrackingConfig());
 	}
 }
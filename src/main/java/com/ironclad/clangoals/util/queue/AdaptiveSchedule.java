@@ -0,0 +1,119 @@
+package com.ironclad.clangoals.util.queue;
+
+/**
+ * Flush interval and size limit for an adaptive {@link com.ironclad.clangoals.util.BatchQueue}.
+ * <p>
+ * The interval follows the arrival rate, aiming for one full batch per flush,
+ * so bursts flush promptly and quiet periods send fewer, larger requests.
+ * Upload health is tracked AIMD style. Healthy uploads grow the size limit in small steps and walk the lower bound
+ * on the interval back down, slow or failed uploads halve the size limit and double the lower bound on the interval.
+ * The server gets fewer, smaller requests while it struggles and fewer, larger ones while it keeps up.
+ */
+public final class AdaptiveSchedule
+{
+	/**
+	 * Weight of the newest observation in the arrival rate average.
+	 */
+	private static final double RATE_WEIGHT = 0.3;
+	/**
+	 * Healthy uploads needed to walk between the bounds.
+	 */
+	private static final int STEPS = 8;
+
+	private final long minInterval;
+	private final long maxInterval;
+	private final int minSize;
+	private final int maxSize;
+	private final long targetLatency;
+	private final long intervalStep;
+	private final int sizeStep;
+
+	/**
+	 * MS, lower bound on the interval raised by unhealthy uploads.
+	 */
+	private long floor;
+	private int limit;
+	/**
+	 * Items per MS, negative until the first flush.
+	 */
+	private double rate = -1;
+	private long lastFlush;
+
+	/**
+	 * @param minInterval   MS, shortest interval between flushes.
+	 * @param maxInterval   MS, longest interval between flushes.
+	 * @param minSize       Smallest size limit.
+	 * @param maxSize       Largest size limit.
+	 * @param initialSize   Size limit to start from.
+	 * @param targetLatency MS, uploads slower than this count as unhealthy.
+	 * @param now           MS, current time.
+	 */
+	public AdaptiveSchedule(long minInterval, long maxInterval, int minSize, int maxSize, int initialSize, long targetLatency, long now)
+	{
+		if (minInterval <= 0 || maxInterval < minInterval || minSize <= 0 || maxSize < minSize)
+		{
+			throw new IllegalArgumentException("Invalid adaptive bounds.");
+		}
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.targetLatency = targetLatency;
+		this.intervalStep = Math.max(1, (maxInterval - minInterval) / STEPS);
+		this.sizeStep = Math.max(1, (maxSize - minSize) / STEPS);
+		this.floor = minInterval;
+		this.limit = Math.max(minSize, Math.min(maxSize, initialSize));
+		this.lastFlush = now;
+	}
+
+	/**
+	 * Record a flush attempt, including ones that found nothing to send.
+	 *
+	 * @param items Number of items flushed.
+	 * @param now   MS, current time.
+	 */
+	public synchronized void onFlush(int items, long now)
+	{
+		long elapsed = Math.max(1, now - this.lastFlush);
+		this.lastFlush = now;
+		double observed = (double) items / elapsed;
+		this.rate = this.rate < 0 ? observed : this.rate + RATE_WEIGHT * (observed - this.rate);
+	}
+
+	/**
+	 * Record the outcome of an upload.
+	 *
+	 * @param latency   MS, time until the upload completed.
+	 * @param delivered Whether the server accepted the batch.
+	 */
+	public synchronized void onUpload(long latency, boolean delivered)
+	{
+		if (!delivered || latency > this.targetLatency)
+		{
+			this.floor = Math.min(this.maxInterval, this.floor * 2);
+			this.limit = Math.max(this.minSize, this.limit / 2);
+		}
+		else
+		{
+			this.floor = Math.max(this.minInterval, this.floor - this.intervalStep);
+			this.limit = Math.min(this.maxSize, this.limit + this.sizeStep);
+		}
+	}
+
+	/**
+	 * @return MS until the next flush.
+	 */
+	public synchronized long nextInterval()
+	{
+		long fill = this.rate > 0 ? (long) (this.limit / this.rate) : this.maxInterval;
+		return Math.min(this.maxInterval, Math.max(this.floor, fill));
+	}
+
+	/**
+	 * @return Number of pending items which triggers an early flush.
+	 */
+	public synchronized int sizeLimit()
+	{
+		return this.limit;
+	}
+}
@@ -0,0 +1,36 @@
+package com.ironclad.clangoals.util.queue;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Outcome of adding an item to a {@link com.ironclad.clangoals.util.BatchQueue}.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum Admission
+{
+	ACCEPTED(true),
+	/**
+	 * Accepted, the oldest pending item was dropped to make room.
+	 */
+	EVICTED_OLDEST(true),
+	/**
+	 * Accepted, merged into the overflow record.
+	 */
+	COALESCED(true),
+	/**
+	 * Accepted after pending items were spilled to the flush consumer.
+	 */
+	SPILLED(true),
+	/**
+	 * Dropped, the queue was full or the item was null.
+	 */
+	REJECTED(false),
+	/**
+	 * Dropped, the queue is not running.
+	 */
+	CLOSED(false);
+
+	private final boolean accepted;
+}
@@ -0,0 +1,21 @@
+package com.ironclad.clangoals.util.queue;
+
+import lombok.Value;
+
+/**
+ * Items accounted for while draining a {@link com.ironclad.clangoals.util.BatchQueue} on shutdown.
+ */
+@Value
+public class DrainResult
+{
+	public static final DrainResult EMPTY = new DrainResult(0, 0);
+
+	/**
+	 * Items the server accepted before the deadline.
+	 */
+	int delivered;
+	/**
+	 * Items that failed, or were still in flight when the deadline passed.
+	 */
+	int abandoned;
+}
@@ -0,0 +1,16 @@
+package com.ironclad.clangoals.util.queue;
+
+/**
+ * How a {@link com.ironclad.clangoals.util.BatchQueue} decides when to flush.
+ */
+public enum FlushMode
+{
+	/**
+	 * Flush every interval, or as soon as the size limit is hit.
+	 */
+	FIXED,
+	/**
+	 * Adjust the interval and size limit within bounds, see {@link AdaptiveSchedule}.
+	 */
+	ADAPTIVE
+}
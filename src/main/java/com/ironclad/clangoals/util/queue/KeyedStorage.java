@@ -0,0 +1,77 @@
+package com.ironclad.clangoals.util.queue;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * Latest value wins storage, holds at most one item per key.
+ * <p>
+ * Offering an item whose key is already pending replaces the pending item in place,
+ * keeping the position of the first one. Items are polled in order of their keys first arrival.
+ *
+ * @param <K> Type of the item keys
+ * @param <T> Type of the stored items
+ */
+public final class KeyedStorage<K, T> implements QueueStorage<T>
+{
+	private final Function<? super T, ? extends K> keyFunction;
+	private final Map<K, T> pending = new ConcurrentHashMap<>();
+	private final Queue<K> order = new ConcurrentLinkedQueue<>();
+	private final int capacity;
+
+	/**
+	 * @param keyFunction Extracts the key of an item, must not return null.
+	 * @param capacity    Maximum number of distinct keys, or {@link #UNBOUNDED}.
+	 */
+	public KeyedStorage(Function<? super T, ? extends K> keyFunction, int capacity)
+	{
+		this.keyFunction = keyFunction;
+		this.capacity = capacity > 0 ? capacity : UNBOUNDED;
+	}
+
+	@Override
+	public boolean offer(T item)
+	{
+		K key = this.keyFunction.apply(item);
+		if (this.capacity != UNBOUNDED && this.pending.size() >= this.capacity)
+		{
+			// Full, only replacements are allowed
+			return this.pending.replace(key, item) != null;
+		}
+		if (this.pending.put(key, item) == null)
+		{
+			this.order.add(key);
+		}
+		return true;
+	}
+
+	@Override
+	public T poll()
+	{
+		K key;
+		while ((key = this.order.poll()) != null)
+		{
+			T item = this.pending.remove(key);
+			if (item != null)
+			{
+				return item;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.pending.size();
+	}
+
+	@Override
+	public int capacity()
+	{
+		return this.capacity;
+	}
+}
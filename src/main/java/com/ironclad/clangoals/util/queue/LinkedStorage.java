@@ -0,0 +1,45 @@
+package com.ironclad.clangoals.util.queue;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unbounded storage, every offer allocates a queue node.
+ * Kept for queues configured without a capacity.
+ */
+public final class LinkedStorage<T> implements QueueStorage<T>
+{
+	private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger count = new AtomicInteger(0);
+
+	@Override
+	public boolean offer(T item)
+	{
+		this.queue.add(item);
+		this.count.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public T poll()
+	{
+		T item = this.queue.poll();
+		if (item != null)
+		{
+			this.count.decrementAndGet();
+		}
+		return item;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.count.get();
+	}
+
+	@Override
+	public int capacity()
+	{
+		return UNBOUNDED;
+	}
+}
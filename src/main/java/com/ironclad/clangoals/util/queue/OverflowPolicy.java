@@ -0,0 +1,26 @@
+package com.ironclad.clangoals.util.queue;
+
+/**
+ * What a bounded {@link com.ironclad.clangoals.util.BatchQueue} does with an item
+ * that arrives while its storage is full.
+ */
+public enum OverflowPolicy
+{
+	/**
+	 * Evict the oldest pending item to make room.
+	 */
+	DROP_OLDEST,
+	/**
+	 * Reject the incoming item.
+	 */
+	DROP_NEWEST,
+	/**
+	 * Merge the incoming item into a single overflow record using the queues merge function.
+	 * Behaves as {@link #SPILL} if the queue has no merge function.
+	 */
+	COALESCE,
+	/**
+	 * Hand everything pending to the flush consumer straight away, then store the incoming item.
+	 */
+	SPILL
+}
@@ -0,0 +1,37 @@
+package com.ironclad.clangoals.util.queue;
+
+/**
+ * Backing store for a {@link com.ironclad.clangoals.util.BatchQueue}.
+ * <p>
+ * Implementations must be safe for concurrent producers and consumers.
+ *
+ * @param <T> Type of the stored items
+ */
+public interface QueueStorage<T>
+{
+	/**
+	 * Marker for storage without a fixed capacity.
+	 */
+	int UNBOUNDED = -1;
+
+	/**
+	 * @param item Item to store
+	 * @return false if the storage is full and the item was not stored.
+	 */
+	boolean offer(T item);
+
+	/**
+	 * @return The oldest item, or null if empty.
+	 */
+	T poll();
+
+	/**
+	 * @return Number of items currently stored.
+	 */
+	int size();
+
+	/**
+	 * @return Maximum number of items that can be stored, or {@link #UNBOUNDED}.
+	 */
+	int capacity();
+}
@@ -0,0 +1,125 @@
+package com.ironclad.clangoals.util.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free multi-producer multi-consumer ring buffer.
+ * <p>
+ * Slots are preallocated, so offering and polling never allocate.
+ * Each slot carries a sequence number which tells producers and consumers
+ * whether it is free to write or ready to read (Vyukov's bounded MPMC queue).
+ * <p>
+ * The requested capacity is rounded up to the next power of two.
+ */
+public final class RingBuffer<T> implements QueueStorage<T>
+{
+	static final int MAX_CAPACITY = 1 << 30;
+
+	private final Object[] slots;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	/**
+	 * Next position to poll from.
+	 */
+	private final AtomicLong head = new AtomicLong(0);
+	/**
+	 * Next position to offer to.
+	 */
+	private final AtomicLong tail = new AtomicLong(0);
+
+	public RingBuffer(int capacity)
+	{
+		if (capacity <= 0 || capacity > MAX_CAPACITY)
+		{
+			throw new IllegalArgumentException("Capacity must be between 1 and " + MAX_CAPACITY);
+		}
+		int size = 1;
+		while (size < capacity)
+		{
+			size <<= 1;
+		}
+		this.slots = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++)
+		{
+			this.sequences.set(i, i);
+		}
+	}
+
+	@Override
+	public boolean offer(T item)
+	{
+		long pos = this.tail.get();
+		for (; ; )
+		{
+			int index = (int) pos & this.mask;
+			long diff = this.sequences.getAcquire(index) - pos;
+			if (diff == 0)
+			{
+				if (this.tail.compareAndSet(pos, pos + 1))
+				{
+					this.slots[index] = item;
+					this.sequences.setRelease(index, pos + 1);
+					return true;
+				}
+				pos = this.tail.get();
+			}
+			else if (diff < 0)
+			{
+				//Slot still holds an item from the previous lap, full.
+				return false;
+			}
+			else
+			{
+				pos = this.tail.get();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T poll()
+	{
+		long pos = this.head.get();
+		for (; ; )
+		{
+			int index = (int) pos & this.mask;
+			long diff = this.sequences.getAcquire(index) - (pos + 1);
+			if (diff == 0)
+			{
+				if (this.head.compareAndSet(pos, pos + 1))
+				{
+					T item = (T) this.slots[index];
+					this.slots[index] = null;
+					this.sequences.setRelease(index, pos + this.mask + 1);
+					return item;
+				}
+				pos = this.head.get();
+			}
+			else if (diff < 0)
+			{
+				//Slot not yet written, empty.
+				return null;
+			}
+			else
+			{
+				pos = this.head.get();
+			}
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		long size = this.tail.get() - this.head.get();
+		return (int) Math.max(0, Math.min(size, this.slots.length));
+	}
+
+	@Override
+	public int capacity()
+	{
+		return this.slots.length;
+	}
+}
@@ -0,0 +1,468 @@
+package com.ironclad.clangoals.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.ironclad.clangoals.components.service.api.ApiService;
+import com.ironclad.clangoals.components.service.api.CircuitState;
+import com.ironclad.clangoals.components.service.api.payload.BatchEncoding;
+import com.ironclad.clangoals.components.service.api.payload.NameEncoding;
+import com.ironclad.clangoals.components.service.api.payload.RecordSource;
+import com.ironclad.clangoals.components.service.api.spool.SpoolManager;
+import com.ironclad.clangoals.components.service.config.dto.ApiConfig;
+import com.ironclad.clangoals.util.BatchQueue;
+import com.ironclad.clangoals.util.StateStore;
+import com.ironclad.clangoals.util.queue.DrainResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import net.runelite.client.eventbus.EventBus;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Batches reach a deduplicating server exactly once, however often a lost reply makes the client send them.
+ */
+public class DeliveryTest
+{
+	private static final long ACCOUNT = 42L;
+	private static final String KEY = "abcdefghij0123456789";
+	private static final String STREAM = "loot";
+
+	private final Gson gson = new Gson();
+	/**
+	 * Rows the server committed per seq.
+	 */
+	private final Map<Long, Integer> committed = new ConcurrentHashMap<>();
+	private final List<Long> received = new CopyOnWriteArrayList<>();
+	private final List<JsonObject> bodies = new CopyOnWriteArrayList<>();
+	private final Map<String, String> state = new ConcurrentHashMap<>();
+	/**
+	 * Seqs the server commits but answers with 503, as if the reply was lost.
+	 */
+	private volatile LongPredicate loseReply = seq -> false;
+	/**
+	 * Requests the server turns away with 429 before reading them.
+	 */
+	private final AtomicInteger throttled = new AtomicInteger();
+	/**
+	 * Retry-After of the 429 replies, null to leave it out.
+	 */
+	private volatile String retryAfter = "1";
+	/**
+	 * Set to turn every batch away with 415, while still listing binary as accepted.
+	 */
+	private volatile boolean unsupported;
+	/**
+	 * Set to fail every batch with 503 before reading it.
+	 */
+	private volatile boolean down;
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private HttpServer server;
+	private ScheduledExecutorService executor;
+	private SpoolManager spools;
+	private Path spoolDir;
+	private StateStore store;
+	private ApiService api;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/api/character", exchange -> reply(exchange, 200, null));
+		this.server.createContext("/api/batch/" + STREAM, this::onBatch);
+		this.server.start();
+
+		this.executor = Executors.newSingleThreadScheduledExecutor();
+		this.spoolDir = Files.createTempDirectory("spool");
+		this.spools = new SpoolManager(this.spoolDir.toFile());
+
+		this.store = new StateStore()
+		{
+			@Override
+			public String get(String key)
+			{
+				return DeliveryTest.this.state.get(key);
+			}
+
+			@Override
+			public void set(String key, String value)
+			{
+				if (value == null)
+				{
+					DeliveryTest.this.state.remove(key);
+				}
+				else
+				{
+					DeliveryTest.this.state.put(key, value);
+				}
+			}
+		};
+
+		this.api = start();
+	}
+
+	/**
+	 * A client as it is after logging in, sharing the spool and state of earlier ones.
+	 */
+	private ApiService start() throws Exception
+	{
+		HttpUrl base = HttpUrl.get("http://127.0.0.1:" + this.server.getAddress().getPort() + "/api/");
+		ApiService api = new ApiService(base, "test", "character", "config", "batch", "combined", "goals", false,
+			new OkHttpClient(), this.gson, this.spools, this.executor, this.store, new EventBus());
+		api.setConfig(ApiConfig.builder()
+			.retryAttempts(3)
+			.retryBaseDelay(10)
+			.retryMaxDelay(20)
+			.breakerFailureRate(100)
+			.build());
+		api.setAccountHash(ACCOUNT);
+		assertTrue(api.checkAuth(KEY).get(5, TimeUnit.SECONDS));
+		return api;
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.server.stop(0);
+		this.executor.shutdownNow();
+		this.spools.close();
+		try (var files = Files.walk(this.spoolDir))
+		{
+			files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testRetriedBatchCommittedOnce() throws Exception
+	{
+		// Every first delivery of a batch loses its reply
+		Map<Long, Boolean> seen = new ConcurrentHashMap<>();
+		this.loseReply = seq -> seen.put(seq, true) == null;
+
+		for (int i = 1; i <= 3; i++)
+		{
+			assertTrue(this.api.batchUpdateAsync(STREAM, rows(i)).get(5, TimeUnit.SECONDS));
+		}
+
+		assertEquals(6, this.received.size());
+		assertEquals(Map.of(1L, 1, 2L, 2, 3L, 3), this.committed);
+		// Not written per ack, only once the ledger is saved
+		assertNull(this.state.get("acked." + ACCOUNT + "." + STREAM));
+		this.api.saveLedger();
+		assertEquals("3", this.state.get("acked." + ACCOUNT + "." + STREAM));
+		assertEquals(0, this.spools.get(ACCOUNT, STREAM).size());
+	}
+
+	@Test
+	public void testSequenceNotReusedAfterRestart() throws Exception
+	{
+		assertTrue(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+		assertTrue(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+
+		// The rest of the reserved block is skipped
+		this.api = start();
+		assertTrue(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+		assertEquals(List.of(1L, 2L, 65L), this.received);
+		assertEquals(Map.of(1L, 1, 2L, 1, 65L, 1), this.committed);
+	}
+
+	@Test
+	public void testAckedSpoolEntryNotReplayed() throws Exception
+	{
+		// The first batch is committed, but every reply to it is lost
+		this.loseReply = seq -> seq == 1;
+		assertFalse(this.api.batchUpdateAsync(STREAM, rows(2)).get(5, TimeUnit.SECONDS));
+		assertEquals(1, this.spools.get(ACCOUNT, STREAM).size());
+
+		// The next reply covers it, the spooled copy is settled without sending it again
+		this.loseReply = seq -> false;
+		assertTrue(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 100 && this.spools.get(ACCOUNT, STREAM).size() > 0; i++)
+		{
+			Thread.sleep(20);
+		}
+
+		assertEquals(0, this.spools.get(ACCOUNT, STREAM).size());
+		assertEquals(List.of(1L, 1L, 1L, 2L), this.received);
+		assertEquals(Map.of(1L, 2, 2L, 1), this.committed);
+	}
+
+	@Test
+	public void testRateLimitedBatchDeferred() throws Exception
+	{
+		this.api.setConfig(ApiConfig.builder()
+			.retryAttempts(1)
+			.build());
+		this.throttled.set(2);
+		long start = System.currentTimeMillis();
+		assertTrue(this.api.batchUpdateAsync(STREAM, rows(1)).get(10, TimeUnit.SECONDS));
+
+		// Two Retry-After: 1 replies, both honored, neither counted as an attempt
+		assertTrue(System.currentTimeMillis() - start >= 2000);
+		assertEquals(List.of(1L), this.received);
+		assertEquals(0, this.spools.get(ACCOUNT, STREAM).size());
+	}
+
+	@Test
+	public void testUnsupportedBatchRejectedOnce() throws Exception
+	{
+		this.api.setConfig(ApiConfig.builder()
+			.binaryBatches(true)
+			.build());
+		this.unsupported = true;
+		assertFalse(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+
+		// Neither fallback applies to an uncompressed batch in an accepted encoding
+		assertEquals(1, this.requests.get());
+		assertEquals(0, this.spools.get(ACCOUNT, STREAM).size());
+	}
+
+	@Test
+	public void testSpooledBatchReplayedWithFullNames() throws Exception
+	{
+		this.api.setConfig(ApiConfig.builder()
+			.retryAttempts(1)
+			.nameEncoding(NameEncoding.DICTIONARY)
+			.build());
+		// Defines the name, later batches send only its reference
+		assertTrue(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+		this.down = true;
+		assertFalse(this.api.batchUpdateAsync(STREAM, rows(2)).get(5, TimeUnit.SECONDS));
+		assertEquals(1, this.spools.get(ACCOUNT, STREAM).size());
+
+		// The server lost the dictionary it was encoded against
+		this.api.resetNameDictionaries();
+		this.down = false;
+		this.api.replaySpooled();
+		for (int i = 0; i < 100 && this.spools.get(ACCOUNT, STREAM).size() > 0; i++)
+		{
+			Thread.sleep(20);
+		}
+
+		assertEquals(List.of(1L, 2L), this.received);
+		JsonObject replayed = this.bodies.get(1);
+		assertFalse(replayed.has("name_dictionary"));
+		replayed.getAsJsonArray("batch").forEach(row -> assertEquals("Coins", row.getAsJsonObject().get("name").getAsString()));
+	}
+
+	@Test
+	public void testCircuitOpensAndRecovers() throws Exception
+	{
+		this.api.setConfig(ApiConfig.builder()
+			.retryAttempts(1)
+			.breakerFailureRate(100)
+			.breakerOpenTime(200)
+			.build());
+		this.down = true;
+		for (int i = 0; i < 4; i++)
+		{
+			assertFalse(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(CircuitState.OPEN, this.api.getCircuitState());
+
+		// Held without a request while open
+		assertFalse(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+		assertEquals(4, this.requests.get());
+
+		// A single probe once the open time passed, failing it opens the circuit again
+		awaitRequests(5);
+		Thread.sleep(50);
+		assertEquals(5, this.requests.get());
+		assertEquals(CircuitState.OPEN, this.api.getCircuitState());
+
+		// The next probe succeeds and closes it, the held batches follow
+		this.down = false;
+		for (int i = 0; i < 250 && this.spools.get(ACCOUNT, STREAM).size() > 0; i++)
+		{
+			Thread.sleep(20);
+		}
+		assertEquals(CircuitState.CLOSED, this.api.getCircuitState());
+		assertEquals(0, this.spools.get(ACCOUNT, STREAM).size());
+		assertEquals(List.of(1L, 2L, 3L, 4L, 5L), this.received);
+	}
+
+	@Test
+	public void testRateLimitedBatchGivenUp() throws Exception
+	{
+		this.api.setConfig(ApiConfig.builder()
+			.retryAttempts(1)
+			.retryBaseDelay(10)
+			.retryMaxDelay(40)
+			.build());
+		this.retryAfter = null;
+		this.throttled.set(100);
+		assertFalse(this.api.batchUpdateAsync(STREAM, rows(1)).get(5, TimeUnit.SECONDS));
+
+		// Resent with a growing pause until the cap, then left in the spool
+		assertEquals(8, this.requests.get());
+		assertEquals(List.of(), this.received);
+		assertEquals(1, this.spools.get(ACCOUNT, STREAM).size());
+	}
+
+	@Test
+	public void testQueueDrainedOnStop() throws Exception
+	{
+		BatchQueue<Integer> queue = new BatchQueue<>(100, 60, items -> this.api.batchUpdateAsync(STREAM, RecordSource.of(items, (item, out) -> out.beginRow()
+			.field("item_id", item)
+			.field("quantity", 1)
+			.field("name", "Coins")
+			.endRow())));
+		queue.start(this.executor);
+		for (int i = 0; i < 5; i++)
+		{
+			queue.addItem(995 + i);
+		}
+
+		// Stopped while auth and the spools are still live, as the plugin stops the tracking components first
+		CompletableFuture<DrainResult> drain = queue.shutdown();
+		this.api.unregisterStream(this, drain);
+		this.api.drained().get(5, TimeUnit.SECONDS);
+
+		assertTrue(drain.isDone());
+		assertEquals(5, drain.get().getDelivered());
+		assertEquals(0, drain.get().getAbandoned());
+		assertEquals(Map.of(1L, 5), this.committed);
+		assertEquals(0, this.spools.get(ACCOUNT, STREAM).size());
+	}
+
+	@Test
+	public void testOversizedBatchSplitByRecord() throws Exception
+	{
+		this.api.setConfig(ApiConfig.builder()
+			.maxBatchBytes(4096)
+			.build());
+		RecordSource records = out -> {
+			for (int record = 0; record < 100; record++)
+			{
+				for (int row = 0; row < 3; row++)
+				{
+					out.beginRow()
+						.field("item_id", record)
+						.field("quantity", row)
+						.field("name", "Grimy snapdragon")
+						.endRow();
+				}
+				out.endRecord();
+			}
+		};
+		assertTrue(this.api.batchUpdateAsync(STREAM, records).get(5, TimeUnit.SECONDS));
+
+		assertTrue(this.bodies.size() > 1);
+		Set<Long> seen = new HashSet<>();
+		int rows = 0;
+		long seq = 0;
+		for (JsonObject body : this.bodies)
+		{
+			assertTrue(this.gson.toJson(body).length() <= 4096);
+			assertEquals(++seq, body.get("seq").getAsLong());
+			Set<Long> ids = new HashSet<>();
+			body.getAsJsonArray("batch").forEach(row -> ids.add(row.getAsJsonObject().get("item_id").getAsLong()));
+			for (long id : ids)
+			{
+				// Every record in exactly one request
+				assertTrue(seen.add(id));
+			}
+			rows += body.getAsJsonArray("batch").size();
+		}
+		assertEquals(100, seen.size());
+		assertEquals(300, rows);
+		assertEquals(0, this.spools.get(ACCOUNT, STREAM).size());
+	}
+
+	private void awaitRequests(int count) throws InterruptedException
+	{
+		for (int i = 0; i < 250 && this.requests.get() < count; i++)
+		{
+			Thread.sleep(20);
+		}
+	}
+
+	private static RecordSource rows(int count)
+	{
+		return out -> {
+			for (int i = 0; i < count; i++)
+			{
+				out.beginRow()
+					.field("item_id", 995 + i)
+					.field("quantity", 1)
+					.field("name", "Coins")
+					.endRow();
+			}
+		};
+	}
+
+	/**
+	 * Deduplicating batch endpoint, commits each seq once and reports the highest committed seq.
+	 */
+	private void onBatch(HttpExchange exchange) throws IOException
+	{
+		this.requests.incrementAndGet();
+		if (this.down)
+		{
+			reply(exchange, 503, null);
+			return;
+		}
+		if (this.unsupported)
+		{
+			exchange.getResponseHeaders().add("accept", "application/json, " + BatchEncoding.BINARY_TYPE);
+			reply(exchange, 415, null);
+			return;
+		}
+		if (this.throttled.getAndUpdate(n -> Math.max(0, n - 1)) > 0)
+		{
+			if (this.retryAfter != null)
+			{
+				exchange.getResponseHeaders().add("retry-after", this.retryAfter);
+			}
+			reply(exchange, 429, null);
+			return;
+		}
+		JsonObject body = this.gson.fromJson(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), JsonObject.class);
+		long seq = body.get("seq").getAsLong();
+		this.received.add(seq);
+		this.bodies.add(body);
+		this.committed.putIfAbsent(seq, body.getAsJsonArray("batch").size());
+
+		if (this.loseReply.test(seq))
+		{
+			reply(exchange, 503, null);
+			return;
+		}
+		long acked = this.committed.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+		reply(exchange, 200, String.valueOf(acked));
+	}
+
+	private static void reply(HttpExchange exchange, int code, String ackSeq) throws IOException
+	{
+		if (ackSeq != null)
+		{
+			exchange.getResponseHeaders().add("x-ack-seq", ackSeq);
+		}
+		exchange.sendResponseHeaders(code, -1);
+		exchange.close();
+	}
+}
@@ -0,0 +1,89 @@
+package com.ironclad.clangoals.api;
+
+import com.ironclad.clangoals.components.service.api.payload.BatchEncoding;
+import com.ironclad.clangoals.components.service.api.payload.Gzip;
+import com.ironclad.clangoals.components.service.api.payload.NameDictionary;
+import com.ironclad.clangoals.components.service.api.payload.RecordSource;
+import com.ironclad.clangoals.components.service.api.payload.RecordWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Bytes saved by gzip, the binary format and name dictionaries on batches shaped like real loot and kill uploads.
+ */
+public class PayloadSizeTest
+{
+	private static final long ACCOUNT = 0x1234_5678_9abc_def0L;
+	private static final String[] ITEMS = {
+		"Coins", "Bones", "Big bones", "Dragon bones", "Grimy ranarr weed", "Grimy snapdragon", "Rune platelegs",
+		"Rune full helm", "Rune kiteshield", "Adamantite bar", "Runite ore", "Law rune", "Death rune", "Blood rune",
+		"Nature rune", "Shark", "Manta ray", "Prayer potion(4)", "Super restore(4)", "Dragon spear", "Dragon med helm",
+		"Clue scroll (hard)", "Ensouled dragon head", "Snape grass seed", "Ranarr seed", "Toadflax seed", "Uncut diamond",
+		"Loop half of key", "Tooth half of key", "Dragon javelin heads", "Zulrah's scales", "Tanzanite fang"
+	};
+	private static final String[] NPCS = {
+		"Goblin", "Cow", "Hill Giant", "Moss giant", "Lesser demon", "Greater demon", "Black dragon", "Blue dragon",
+		"Abyssal demon", "Gargoyle", "Nechryael", "Dust devil", "Cave kraken", "Zulrah", "Vorkath", "Kalphite Queen"
+	};
+
+	@Test
+	public void testEncodingSizes() throws Exception
+	{
+		Random random = new Random(42);
+
+		List<int[]> drops = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+		{
+			int item = random.nextInt(ITEMS.length);
+			drops.add(new int[]{item, 995 + item * 37, 1 + random.nextInt(item == 0 ? 50_000 : 20)});
+		}
+		RecordWriter<int[]> lootWriter = (row, out) -> out.beginRow()
+			.field("item_id", row[1])
+			.field("quantity", row[2])
+			.field("name", ITEMS[row[0]])
+			.endRow();
+		RecordSource loot = RecordSource.of(drops, lootWriter);
+
+		List<Integer> npcs = new ArrayList<>();
+		for (int i = 0; i < 500; i++)
+		{
+			// Slayer tasks, long runs of the same npc
+			npcs.add(i / 60 % NPCS.length);
+		}
+		RecordSource kills = RecordSource.of(npcs, (npc, out) -> out.beginRow()
+			.field("npc_id", 2000 + npc * 13)
+			.field("name", NPCS[npc])
+			.endRow());
+
+		byte[] lootJson = BatchEncoding.json(ACCOUNT, loot);
+		byte[] killJson = BatchEncoding.json(ACCOUNT, kills);
+		assertTrue(gzipRatio(lootJson) < 0.35);
+		assertTrue(gzipRatio(killJson) < 0.15);
+		assertTrue(BatchEncoding.binary(ACCOUNT, loot).length < lootJson.length / 2);
+		assertTrue(BatchEncoding.binary(ACCOUNT, kills).length < killJson.length / 2);
+
+		// Second batch of a session, after the first one defining the names was delivered
+		NameDictionary dictionary = new NameDictionary();
+		NameDictionary.Batch first = dictionary.begin();
+		BatchEncoding.json(ACCOUNT, first.getSession(), first.wrap(loot));
+		first.delivered();
+		NameDictionary.Batch second = dictionary.begin();
+		byte[] lootDictionary = BatchEncoding.binary(ACCOUNT, second.getSession(), second.wrap(loot));
+		assertTrue(BatchEncoding.binaryToJson(lootDictionary).length < lootJson.length * 0.85);
+		assertTrue(BatchEncoding.json(ACCOUNT, NameDictionary.omit(loot)).length < lootJson.length * 0.85);
+
+		// Binary batches convert back to the exact json a json batch would have sent
+		assertArrayEquals(lootJson, BatchEncoding.binaryToJson(BatchEncoding.binary(ACCOUNT, loot)));
+		assertArrayEquals(BatchEncoding.json(-ACCOUNT, kills), BatchEncoding.binaryToJson(BatchEncoding.binary(-ACCOUNT, kills)));
+	}
+
+	private static double gzipRatio(byte[] payload) throws IOException
+	{
+		return (double) Gzip.compress(payload).length / payload.length;
+	}
+}
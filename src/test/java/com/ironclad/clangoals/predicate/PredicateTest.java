@@ -8,9 +8,21 @@ import com.ironclad.clangoals.components.tracking.xp.XpTrackingConfig;
 import com.ironclad.clangoals.util.predicate.NumInRange;
 import com.ironclad.clangoals.util.predicate.ValidApiKey;
 import com.ironclad.clangoals.util.predicate.ConfigValidator;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.ironclad.clangoals.util.gson.ConfigAdapterFactory;
+import com.ironclad.clangoals.util.gson.PatternAdapter;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 
 public class PredicateTest
@@ -50,8 +62,68 @@ public class PredicateTest
 			.build();
 		assertTrue(validConfig.test(conf));
 		assertFalse(validConfig.test(null));
-		assertFalse(validConfig.test(new RemoteConfig(null, 1, true, null, null, null)));
+		assertFalse(validConfig.test(new RemoteConfig(null, 1, true, null, null, null, null, null)));
 		conf.setRefreshInterval(600);
 		assertFalse(validConfig.test(conf));
 	}
+
+	@Test
+	public void testConfigDecoding()
+	{
+		Gson gson = new GsonBuilder()
+			.registerTypeAdapter(Pattern.class, new PatternAdapter())
+			.registerTypeAdapter(Instant.class, new TypeAdapter<Instant>()
+			{
+				@Override
+				public void write(JsonWriter out, Instant value)
+				{
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public Instant read(JsonReader in) throws IOException
+				{
+					return Instant.parse(in.nextString());
+				}
+			})
+			.registerTypeAdapterFactory(new ConfigAdapterFactory())
+			.create();
+		String queue = "{\"size\":100,\"interval\":60}";
+		String npcs = "{\"enabled\":true,\"batch_config\":" + queue
+			+ ",\"message_matchers\":[{\"pattern\":{\"pattern\":\"(?<name>.+) kill count\",\"flags\":0},\"is_group\":true}]"
+			+ ",\"mappings\":[{\"name\":\"Sarachnis\",\"id\":8713,\"blacklist\":[]}]"
+			+ ",\"raid_whitelist\":[],\"loot_only_npcs\":[1]}";
+		String json = "{\"last_updated\":\"2024-01-01T00:00:00Z\",\"refresh_interval\":10,\"disabled_worlds\":[\"PVP\"]"
+			+ ",\"unknown\":{\"skipped\":[1,2]}"
+			+ ",\"xp_tracking\":{\"enabled\":true,\"batch_config\":" + queue + "}"
+			+ ",\"item_tracking\":{\"enabled\":true,\"batch_config\":" + queue
+			+ ",\"loot_events\":[{\"event\":\"Barrows\",\"display_name\":\"Barrows\",\"icon_id\":4708,\"type\":\"EVENT\",\"id\":1}]}"
+			+ ",\"npc_tracking\":" + npcs + "}";
+
+		RemoteConfig conf = gson.fromJson(json, RemoteConfig.class);
+		assertTrue(new ConfigValidator().test(conf));
+		assertEquals(1, conf.getItemTrackingConfig().getLootEvents().size());
+		assertEquals(1, conf.getNpcTrackingConfig().getMessageMatchers().size());
+		assertTrue(conf.getNpcTrackingConfig().getLootOnlyNpcs().contains(1));
+
+		// Fails on the first bad field, naming it
+		try
+		{
+			gson.fromJson(json.replace("\"Sarachnis\"", "\"\""), RemoteConfig.class);
+			fail("Empty mapping name accepted");
+		}
+		catch (JsonParseException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("$.npc_tracking.mappings[0].name"));
+		}
+		try
+		{
+			gson.fromJson(json.replace("\"refresh_interval\":10", "\"refresh_interval\":600"), RemoteConfig.class);
+			fail("Refresh interval accepted");
+		}
+		catch (JsonParseException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("refresh_interval"));
+		}
+	}
 }
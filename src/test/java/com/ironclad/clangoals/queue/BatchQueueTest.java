@@ -0,0 +1,306 @@
+package com.ironclad.clangoals.queue;
+
+import com.ironclad.clangoals.components.service.config.dto.QueueConfig;
+import com.ironclad.clangoals.util.BatchQueue;
+import com.ironclad.clangoals.util.queue.AdaptiveSchedule;
+import com.ironclad.clangoals.util.queue.Admission;
+import com.ironclad.clangoals.util.queue.KeyedStorage;
+import com.ironclad.clangoals.util.queue.OverflowPolicy;
+import com.ironclad.clangoals.util.queue.RingBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchQueueTest
+{
+	private ScheduledExecutorService executor;
+
+	@Before
+	public void before()
+	{
+		this.executor = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@After
+	public void after()
+	{
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void testRingBuffer()
+	{
+		RingBuffer<Integer> ring = new RingBuffer<>(5);
+		assertEquals(8, ring.capacity());
+		for (int i = 0; i < 8; i++)
+		{
+			assertTrue(ring.offer(i));
+		}
+		assertFalse(ring.offer(8));
+		assertEquals(8, ring.size());
+		assertEquals(Integer.valueOf(0), ring.poll());
+		assertTrue(ring.offer(8));
+		for (int i = 1; i <= 8; i++)
+		{
+			assertEquals(Integer.valueOf(i), ring.poll());
+		}
+		assertNull(ring.poll());
+		assertEquals(0, ring.size());
+	}
+
+	@Test
+	public void testKeyedStorage()
+	{
+		KeyedStorage<Integer, Integer> keyed = new KeyedStorage<>(i -> i % 3, 2);
+		assertTrue(keyed.offer(0));
+		assertTrue(keyed.offer(1));
+		assertFalse(keyed.offer(2));
+		assertTrue(keyed.offer(3));
+		assertTrue(keyed.offer(4));
+		assertEquals(2, keyed.size());
+		assertEquals(Integer.valueOf(3), keyed.poll());
+		assertTrue(keyed.offer(5));
+		assertTrue(keyed.offer(7));
+		assertEquals(Integer.valueOf(7), keyed.poll());
+		assertEquals(Integer.valueOf(5), keyed.poll());
+		assertNull(keyed.poll());
+		assertEquals(0, keyed.size());
+	}
+
+	@Test
+	public void testOverflowPolicies()
+	{
+		assertEquals(Admission.REJECTED, fill(OverflowPolicy.DROP_NEWEST, null).addItem(99));
+		assertEquals(Admission.EVICTED_OLDEST, fill(OverflowPolicy.DROP_OLDEST, null).addItem(99));
+		assertEquals(Admission.COALESCED, fill(OverflowPolicy.COALESCE, Integer::sum).addItem(99));
+		assertEquals(Admission.SPILLED, fill(OverflowPolicy.COALESCE, null).addItem(99));
+
+		BatchQueue<Integer> queue = fill(OverflowPolicy.SPILL, null);
+		assertEquals(Admission.SPILLED, queue.addItem(99));
+		assertEquals(1, queue.size());
+		queue.shutdown();
+		assertEquals(Admission.CLOSED, queue.addItem(100));
+	}
+
+	private BatchQueue<Integer> fill(OverflowPolicy policy, BinaryOperator<Integer> merger)
+	{
+		List<Integer> flushed = new ArrayList<>();
+		BatchQueue<Integer> queue = BatchQueue.<Integer>builder()
+			.config(QueueConfig.builder()
+				.size(-1)
+				.interval(60)
+				.capacity(4)
+				.overflow(policy)
+				.build())
+			.merger(merger)
+			.onFlush(batch -> {
+				flushed.addAll(batch);
+				return CompletableFuture.completedFuture(true);
+			})
+			.build();
+		queue.start(this.executor);
+		for (int i = 0; i < 4; i++)
+		{
+			assertEquals(Admission.ACCEPTED, queue.addItem(i));
+		}
+		return queue;
+	}
+
+	@Test
+	public void testSingleFlightFlush() throws Exception
+	{
+		List<Integer> flushed = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger serializing = new AtomicInteger();
+		AtomicInteger uploading = new AtomicInteger();
+		AtomicInteger overlaps = new AtomicInteger();
+		AtomicBoolean closing = new AtomicBoolean();
+		ScheduledExecutorService network = Executors.newScheduledThreadPool(4);
+		BatchQueue<Integer> queue = BatchQueue.<Integer>builder()
+			.config(QueueConfig.builder()
+				.size(7)
+				.interval(60)
+				.maxInFlight(2)
+				.build())
+			.onFlush(batch -> {
+				// Shutdown sends everything left regardless of the in flight limit
+				if (serializing.incrementAndGet() > 1 || uploading.incrementAndGet() > 2 && !closing.get())
+				{
+					overlaps.incrementAndGet();
+				}
+				flushed.addAll(batch);
+				serializing.decrementAndGet();
+				CompletableFuture<Boolean> upload = new CompletableFuture<>();
+				network.schedule(() -> {
+					uploading.decrementAndGet();
+					upload.complete(true);
+				}, 1, TimeUnit.MILLISECONDS);
+				return upload;
+			})
+			.build();
+		queue.start(this.executor);
+
+		Thread hopper = new Thread(() -> {
+			for (int i = 0; i < 500; i++)
+			{
+				queue.flush();
+			}
+		});
+		hopper.start();
+		for (int i = 0; i < 2000; i++)
+		{
+			queue.addItem(i);
+		}
+		hopper.join();
+		closing.set(true);
+		queue.shutdown().get(5, TimeUnit.SECONDS);
+		network.shutdownNow();
+
+		assertEquals(0, overlaps.get());
+		assertEquals(2000, flushed.size());
+		for (int i = 0; i < 2000; i++)
+		{
+			assertEquals(Integer.valueOf(i), flushed.get(i));
+		}
+	}
+
+	@Test
+	public void testUrgentFlush() throws Exception
+	{
+		CompletableFuture<List<Integer>> flushed = new CompletableFuture<>();
+		BatchQueue<Integer> queue = BatchQueue.<Integer>builder()
+			.config(QueueConfig.builder()
+				.size(100)
+				.interval(60)
+				.urgentDelay(10)
+				.build())
+			.onFlush(batch -> {
+				flushed.complete(batch);
+				return CompletableFuture.completedFuture(true);
+			})
+			.build();
+		queue.start(this.executor);
+
+		assertEquals(Admission.ACCEPTED, queue.addItem(1));
+		assertEquals(Admission.ACCEPTED, queue.addItem(2, true));
+		assertEquals(List.of(1, 2), flushed.get(1, TimeUnit.SECONDS));
+		queue.shutdown();
+	}
+
+	@Test
+	public void testReconfigure() throws Exception
+	{
+		CompletableFuture<List<Integer>> flushed = new CompletableFuture<>();
+		QueueConfig config = QueueConfig.builder()
+			.size(100)
+			.interval(60)
+			.capacity(8)
+			.build();
+		BatchQueue<Integer> queue = BatchQueue.<Integer>builder()
+			.config(config)
+			.onFlush(batch -> {
+				flushed.complete(batch);
+				return CompletableFuture.completedFuture(true);
+			})
+			.build();
+		queue.start(this.executor);
+		for (int i = 0; i < 6; i++)
+		{
+			queue.addItem(i);
+		}
+
+		assertFalse(queue.reconfigure(config.toBuilder().build()));
+		assertTrue(queue.reconfigure(config.toBuilder().capacity(4).size(4).interval(1).build()));
+		assertEquals(List.of(0, 1, 2, 3, 4, 5), flushed.get(1, TimeUnit.SECONDS));
+		queue.shutdown();
+	}
+
+	@Test
+	public void testAddDuringReconfigure() throws Exception
+	{
+		int count = 100_000;
+		List<Integer> flushed = Collections.synchronizedList(new ArrayList<>());
+		QueueConfig config = QueueConfig.builder()
+			.size(0)
+			.interval(60)
+			.capacity(1 << 17)
+			.build();
+		BatchQueue<Integer> queue = BatchQueue.<Integer>builder()
+			.config(config)
+			.onFlush(batch -> {
+				flushed.addAll(batch);
+				return CompletableFuture.completedFuture(true);
+			})
+			.build();
+		queue.start(this.executor);
+
+		Thread producer = new Thread(() -> {
+			for (int i = 0; i < count; i++)
+			{
+				assertTrue(queue.addItem(i).isAccepted());
+			}
+		});
+		producer.start();
+		// Every capacity change swaps the storage under the producer
+		for (int i = 0; producer.isAlive(); i++)
+		{
+			queue.reconfigure(config.toBuilder().capacity(i % 2 == 0 ? 1 << 18 : 1 << 17).build());
+		}
+		producer.join();
+		queue.shutdown().get(5, TimeUnit.SECONDS);
+
+		List<Integer> sorted = new ArrayList<>(flushed);
+		Collections.sort(sorted);
+		assertEquals(count, sorted.size());
+		for (int i = 0; i < count; i++)
+		{
+			assertEquals(Integer.valueOf(i), sorted.get(i));
+		}
+	}
+
+	@Test
+	public void testAdaptiveSchedule()
+	{
+		AdaptiveSchedule schedule = new AdaptiveSchedule(1000, 60000, 10, 80, 20, 500, 0);
+
+		// Idle, send as rarely as allowed.
+		schedule.onFlush(0, 60000);
+		assertEquals(60000, schedule.nextInterval());
+
+		// Burst of 100 items per second fills a batch well within the minimum.
+		schedule.onFlush(6000, 60000 + 60000);
+		assertEquals(1000, schedule.nextInterval());
+
+		// Healthy uploads grow the size limit additively.
+		schedule.onUpload(100, true);
+		assertEquals(28, schedule.sizeLimit());
+
+		// Slow and failed uploads shrink it multiplicatively, and stretch the interval.
+		schedule.onUpload(1000, true);
+		assertEquals(14, schedule.sizeLimit());
+		schedule.onUpload(100, false);
+		assertEquals(10, schedule.sizeLimit());
+		assertEquals(4000, schedule.nextInterval());
+
+		for (int i = 0; i < 10; i++)
+		{
+			schedule.onUpload(100, true);
+		}
+		// Back at the minimum floor, waiting to fill the larger batch at the observed rate.
+		assertEquals(80, schedule.sizeLimit());
+		assertEquals(2666, schedule.nextInterval());
+	}
+}
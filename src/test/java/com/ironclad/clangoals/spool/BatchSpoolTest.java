@@ -0,0 +1,279 @@
+package com.ironclad.clangoals.spool;
+
+import com.ironclad.clangoals.components.service.api.spool.BatchSpool;
+import com.ironclad.clangoals.components.service.api.spool.SpoolEntry;
+import com.ironclad.clangoals.components.service.api.spool.SpoolManager;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Recovery of the memory mapped spool after the client stopped, cleanly or not.
+ */
+public class BatchSpoolTest
+{
+	/**
+	 * Magic and version ahead of the first record.
+	 */
+	private static final int SEGMENT_HEADER = 8;
+	/**
+	 * Length and seq ahead of each payload.
+	 */
+	private static final int RECORD_HEADER = 12;
+
+	private Path dir;
+	private final List<BatchSpool> open = new ArrayList<>();
+
+	@Before
+	public void setUp() throws IOException
+	{
+		this.dir = Files.createTempDirectory("spool");
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		this.open.forEach(BatchSpool::close);
+		try (Stream<Path> files = Files.walk(this.dir))
+		{
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testReopenReplaysPending() throws IOException
+	{
+		BatchSpool spool = open();
+		spool.append(bytes("a"));
+		spool.append(bytes("b"));
+		spool.append(bytes("c"));
+		spool.close();
+
+		spool = open();
+		assertEquals(3, spool.size());
+		assertEntry(1, "a", spool.next());
+		assertEntry(2, "b", spool.next());
+		assertEntry(3, "c", spool.next());
+		assertNull(spool.next());
+
+		// Numbering carries on after the recovered batches
+		assertEquals(4, spool.append(bytes("d")).getSeq());
+	}
+
+	@Test
+	public void testReleasedEntryReplayedInOrder() throws IOException
+	{
+		BatchSpool spool = open();
+		SpoolEntry a = spool.append(bytes("a"));
+		spool.append(bytes("b"));
+
+		// Both in flight
+		assertNull(spool.next());
+		spool.release(a.getSeq());
+		assertEntry(1, "a", spool.next());
+		assertNull(spool.next());
+	}
+
+	@Test
+	public void testAcksPersisted() throws IOException
+	{
+		BatchSpool spool = open();
+		spool.append(bytes("a"));
+		spool.append(bytes("b"));
+		spool.append(bytes("c"));
+		spool.append(bytes("d"));
+		// Below the high-water mark, and one out of order
+		spool.ack(1);
+		spool.ack(2);
+		spool.ack(4);
+		spool.close();
+
+		spool = open();
+		assertEquals(1, spool.size());
+		assertEntry(3, "c", spool.next());
+		assertNull(spool.next());
+		assertEquals(5, spool.append(bytes("e")).getSeq());
+	}
+
+	@Test
+	public void testTornRecordIgnored() throws IOException
+	{
+		BatchSpool spool = open();
+		spool.append(bytes("first"));
+		spool.append(bytes("second"));
+		spool.close();
+
+		// Crashed before the length of the second record was written
+		Path segment = segments().get(0);
+		int second = SEGMENT_HEADER + RECORD_HEADER + "first".length();
+		writeInt(segment, second, 0);
+
+		spool = open();
+		assertEquals(1, spool.size());
+		assertEntry(1, "first", spool.next());
+		assertNull(spool.next());
+
+		// Appends overwrite the torn record
+		spool.append(bytes("third"));
+		spool.close();
+
+		spool = open();
+		assertEquals(2, spool.size());
+		assertEntry(1, "first", spool.next());
+		assertEntry(2, "third", spool.next());
+	}
+
+	@Test
+	public void testCorruptLengthStopsScan() throws IOException
+	{
+		BatchSpool spool = open();
+		spool.append(bytes("first"));
+		spool.append(bytes("second"));
+		spool.close();
+
+		// Length running past the end of the file
+		writeInt(segments().get(0), SEGMENT_HEADER + RECORD_HEADER + "first".length(), Integer.MAX_VALUE);
+
+		spool = open();
+		assertEquals(1, spool.size());
+		assertEntry(1, "first", spool.next());
+	}
+
+	@Test
+	public void testAcknowledgedSegmentsDeleted() throws IOException
+	{
+		BatchSpool spool = open();
+		// Two per segment
+		byte[] payload = new byte[100 * 1024];
+		for (int i = 0; i < 5; i++)
+		{
+			spool.append(payload);
+		}
+		assertEquals(3, segments().size());
+
+		spool.ack(1);
+		spool.ack(2);
+		assertEquals(2, segments().size());
+		spool.ack(4);
+		spool.ack(3);
+		// The active segment is kept
+		spool.ack(5);
+		assertEquals(1, segments().size());
+		assertEquals(0, spool.size());
+		spool.close();
+
+		spool = open();
+		assertNull(spool.next());
+		assertEquals(6, spool.append(bytes("next")).getSeq());
+	}
+
+	@Test
+	public void testUnreadableSegmentNameNotReused() throws IOException
+	{
+		BatchSpool spool = open();
+		spool.append(bytes("a"));
+		spool.ack(1);
+		spool.close();
+
+		// Fully acknowledged, the next append starts a new segment
+		Files.delete(segments().get(0));
+		// Created but not initialized before a crash, the new segment would get its name
+		Files.write(this.dir.resolve(String.format("%020d.seg", 2)), new byte[64]);
+
+		spool = open();
+		assertEquals(0, spool.size());
+		SpoolEntry entry = spool.append(bytes("b"));
+		spool.close();
+
+		spool = open();
+		assertEntry(entry.getSeq(), "b", spool.next());
+	}
+
+	@Test
+	public void testManagerTracksPending() throws IOException
+	{
+		Path root = this.dir.resolve("manager");
+		SpoolManager manager = new SpoolManager(root.toFile());
+		manager.get(1, "loot").append(bytes("a"));
+		manager.get(1, "npc");
+		assertEquals(List.of("loot"), manager.pending(1));
+		manager.close();
+
+		// Spools of an earlier session are found on disk
+		manager = new SpoolManager(root.toFile());
+		assertEquals(List.of("loot"), manager.pending(1));
+		assertEquals(List.of(), manager.pending(2));
+		BatchSpool loot = manager.get(1, "loot");
+		loot.ack(loot.next().getSeq());
+		assertEquals(List.of(), manager.pending(1));
+		manager.close();
+	}
+
+	@Test
+	public void testClosedManagerOpensNothing() throws IOException
+	{
+		SpoolManager manager = new SpoolManager(this.dir.resolve("manager").toFile());
+		manager.get(1, "loot").append(bytes("a"));
+		manager.close();
+
+		// Uploads settling after the plugin stopped
+		assertNull(manager.get(1, "loot"));
+		assertEquals(List.of(), manager.pending(1));
+
+		manager.open();
+		assertEquals(List.of("loot"), manager.pending(1));
+		manager.close();
+	}
+
+	private BatchSpool open() throws IOException
+	{
+		BatchSpool spool = BatchSpool.open(this.dir);
+		this.open.add(spool);
+		return spool;
+	}
+
+	private List<Path> segments() throws IOException
+	{
+		try (Stream<Path> files = Files.list(this.dir))
+		{
+			return files.filter(path -> path.toString().endsWith(".seg"))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+	}
+
+	private static void writeInt(Path file, long position, int value) throws IOException
+	{
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"))
+		{
+			raf.seek(position);
+			raf.writeInt(value);
+		}
+	}
+
+	private static void assertEntry(long seq, String payload, SpoolEntry entry)
+	{
+		assertTrue("Missing entry " + seq, entry != null);
+		assertEquals(seq, entry.getSeq());
+		assertArrayEquals(bytes(payload), entry.getPayload());
+	}
+
+	private static byte[] bytes(String value)
+	{
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}